@@ -1,5 +1,10 @@
 package studio.app;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.function.Consumer;
 
 import snap.geom.Point;
 import snap.geom.Rect;
@@ -17,11 +22,11 @@ public class Editor extends Viewer implements DeepChangeListener {
     // Whether we're really editing
     boolean            _editing = true;
     
-    // List of currently selected views
-    List <View>        _selectedViews = new ArrayList();
+    // List of currently selected views (with identity index for isSelected)
+    List <View>        _selectedViews = new IdentityList();
     
-    // List of super selected views (all ancestors of selected views)
-    List <View>        _superSelectedViews = new ArrayList();
+    // List of super selected views (all ancestors of selected views, with identity index for isSuperSelected)
+    List <View>        _superSelectedViews = new IdentityList();
     
     // The last view that was copied to the clipboard (used for smart paste)
     View               _lastCopyView;
@@ -50,14 +55,43 @@ public class Editor extends Viewer implements DeepChangeListener {
     // The current editor tool
     ViewTool              _currentTool = getSelectTool();
     
-    // The undoer
-    Undoer                _undoer = new Undoer();
+    // The undoer (coalesces repeated property changes and bounds undo history)
+    Undoer                _undoer = new EditorUndoer();
     
     // The current time
     int                   _time;
     
     // A ViewUpdater.Listener to expand repaint bounds
     ViewUpdater.Listener  _updaterLsnr = (rv,r) -> rootViewWillPaint(rv,r);
+    
+    // Spatial indexes of children for parent views with many children, used for hit testing (created lazily)
+    Map <ParentView,ViewGrid> _viewGrids = new IdentityHashMap();
+    
+    // A DeepChangeListener to keep view grids up to date (separate from editor, so it works when not editing)
+    DeepChangeListener    _viewGridsLsnr = (v,pc) -> updateViewGrids(pc);
+    
+    // The min child count for a parent view to get a view grid for hit testing
+    static final int      VIEW_GRID_MIN = 32;
+    
+    // The depth of nested mutation transactions and the views changed in current transaction
+    int                   _txnDepth;
+    Set <View>            _txnViews = Collections.newSetFromMap(new IdentityHashMap());
+    
+    // The generation of last save started (a background write is dropped if a newer save started) and its lock
+    int                   _saveGen;
+    final Object          _saveLock = new Object();
+    
+    // The size of last content XML bytes (to size buffer for next update)
+    int                   _xmlSize;
+    
+    // The autosave journal (created on first change for local source file)
+    EditorJournal         _journal;
+    
+    // The modification count (incremented by deepChange for every content change)
+    int                   _modCount;
+    
+    // Whether content was recovered from autosave journal (unsaved changes that aren't in undoer)
+    boolean               _recovered;
 
     // Constants for PropertyChanges
     public static final String CurrentTool_Prop = "CurrentTool";
@@ -78,6 +112,7 @@ public Editor()
     
     // Listen for deep changes on ContentBox
     getContentBox().addDeepChangeListener(this);
+    getContentBox().addDeepChangeListener(_viewGridsLsnr);
 }
 
 /**
@@ -97,6 +132,7 @@ public void setContent(View aView)
 {
     // If already set, just return
     if(aView==getContent()) return; super.setContent(aView);
+    _viewGrids.clear(); discardJournal(); _recovered = false;
     
     // Super-select new content
     setSuperSelectedView(aView);
@@ -131,13 +167,177 @@ public ParentView getContentPage()
  */
 public void save() throws Exception
 {
-    // Get source file and save (update file might get called from here)
-    updateFile();
+    // If local file, stream content straight to file - new save generation drops any background write still in
+    // progress, so it can't overwrite this one
     WebFile file = getSourceFile(true);
-    file.save();
+    File jfile = file.getJavaFile();
+    if(jfile!=null) {
+        int gen; synchronized(_saveLock) { gen = ++_saveGen; }
+        writeFile(jfile, getContentXML(), gen);
+        file.reload(); file.setUpdater(null);
+    }
     
-    // Clear undoer
-    getUndoer().reset();
+    // Otherwise, update file bytes and save (update file might get called from here)
+    else {
+        updateFile();
+        synchronized(_saveLock) { _saveGen++; file.save(); }
+    }
+    
+    // Clear undoer, recovered and journal
+    getUndoer().reset(); _recovered = false;
+    discardJournal();
+}
+
+/**
+ * Saves the content in background: The content is archived to XML on a background thread (views are only read) and
+ * confirmed on UI thread (if content changed during archive, it is archived again there), then written on a background
+ * thread to a temp file that replaces the source file. When done, given callback is called on UI thread with null or
+ * the save error.
+ */
+public void saveInBackground(Consumer <Throwable> aCallback)
+{
+    // Get source file (if not local file, just do normal save)
+    WebFile file = getSourceFile(true);
+    File jfile = file.getJavaFile();
+    if(jfile==null) {
+        Throwable error = null; try { save(); } catch(Throwable e) { error = e; }
+        if(aCallback!=null) aCallback.accept(error); return;
+    }
+    
+    // Archive content on background thread, then confirm on UI thread
+    View content = getContent(); int modCount = _modCount;
+    Thread thread = new Thread(() -> {
+        XMLElement xml = null;
+        try { xml = new ViewArchiver().writeToXML(content); }
+        catch(RuntimeException e) { }   // Content changed during archive - archived again on UI thread
+        XMLElement xml2 = xml;
+        getEnv().runLater(() -> saveInBackgroundArchived(file, jfile, getContent()==content? xml2 : null, modCount,
+            aCallback));
+    }, "EditorSave");
+    thread.start();
+}
+
+/**
+ * Called on UI thread when background archive is done: If content changed during archive (or archive failed), archives
+ * again on UI thread, then writes XML on background thread.
+ */
+void saveInBackgroundArchived(WebFile aFile, File aJFile, XMLElement anXML, int aModCount,
+    Consumer <Throwable> aCallback)
+{
+    // If content changed during archive (or archive failed), archive again
+    XMLElement xml = anXML; int modCount = aModCount;
+    if(xml==null || _modCount!=modCount) { xml = getContentXML(); modCount = _modCount; }
+    
+    // Get new save generation and write in background
+    int gen; synchronized(_saveLock) { gen = ++_saveGen; }
+    XMLElement xml2 = xml; int modCount2 = modCount;
+    Thread thread = new Thread(() -> {
+        Throwable error = null; boolean written = false;
+        try { written = writeFile(aJFile, xml2, gen); }
+        catch(Throwable e) { error = e; }
+        Throwable err = error; boolean wrtn = written;
+        getEnv().runLater(() -> saveInBackgroundFinished(aFile, modCount2, wrtn, err, aCallback));
+    }, "EditorSave");
+    thread.start();
+}
+
+/**
+ * Called on UI thread when background save is done: If written with no edits since snapshot, clears undoer.
+ */
+protected void saveInBackgroundFinished(WebFile aFile, int aModCount, boolean isWritten, Throwable anError,
+    Consumer <Throwable> aCallback)
+{
+    // If written, reload file and if no edits since snapshot, clear undoer, updater and journal (document is clean)
+    // (if not written, a newer save replaced this one and does this)
+    if(isWritten && anError==null) {
+        aFile.reload();
+        if(_modCount==aModCount) {
+            getUndoer().reset(); _recovered = false; aFile.setUpdater(null); discardJournal(); }
+    }
+    
+    // Call callback
+    if(aCallback!=null) aCallback.accept(anError);
+}
+
+/**
+ * Streams given XML to given file by writing a temp file and renaming it (a failed write never leaves a partial file),
+ * unless a newer save than given generation started. Returns whether file was written. Elements are released as
+ * written, so the snapshot can be collected during the write.
+ */
+boolean writeFile(File aFile, XMLElement anXML, int aGen) throws IOException
+{
+    // Create unique temp file in same directory (so rename stays on same file system)
+    File dir = aFile.getAbsoluteFile().getParentFile(); dir.mkdirs();
+    File tfile = File.createTempFile(aFile.getName(), ".tmp", dir);
+    
+    // Write temp file and if no newer save started, replace file (temp file is always deleted, if still there)
+    try {
+        XMLWriter.writeXML(anXML, new FileOutputStream(tfile), true);
+        synchronized(_saveLock) {
+            if(aGen!=_saveGen) return false;
+            moveFile(tfile, aFile); return true;
+        }
+    }
+    finally { tfile.delete(); }
+}
+
+/**
+ * Moves given file to replace given destination file: Atomically if file system supports it, otherwise plain replace.
+ */
+static void moveFile(File aFile, File aDest) throws IOException
+{
+    try { Files.move(aFile.toPath(), aDest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE); }
+    catch(AtomicMoveNotSupportedException e) {
+        Files.move(aFile.toPath(), aDest.toPath(), StandardCopyOption.REPLACE_EXISTING); }
+}
+
+/**
+ * Returns the autosave journal, creating it for local source file if needed (or null if no local source file).
+ */
+public EditorJournal getJournal()
+{
+    // Get local source file (if none, just return null)
+    WebFile file = getSourceFile(false);
+    File jfile = file!=null? file.getJavaFile() : null; if(jfile==null) return null;
+    
+    // If journal missing or for another source, create new one
+    if(_journal==null || !_journal.getSource().equals(jfile)) {
+        discardJournal(); _journal = new EditorJournal(this, jfile); }
+    return _journal;
+}
+
+/**
+ * Returns whether content was recovered from autosave journal (unsaved changes that aren't in undoer).
+ */
+public boolean isRecovered()  { return _recovered; }
+
+/**
+ * Sets whether content was recovered from autosave journal (marks document as having unsaved changes).
+ */
+public void setRecovered(boolean aValue)
+{
+    // Set value and if recovered, set updater so content is written on save
+    _recovered = aValue; if(!aValue) return;
+    WebFile file = getSourceFile(false);
+    if(file!=null) file.setUpdater(_updr);
+    
+    // Reset EditorPane
+    EditorPane ep = getEditorPane(); if(ep!=null) ep.resetLater();
+}
+
+/**
+ * Override to also return true if content was recovered from autosave journal (unsaved but not in undoer).
+ */
+public boolean undoerHasUndos()  { return super.undoerHasUndos() || _recovered; }
+
+/**
+ * Discards the autosave journal and deletes its files (when document is saved or changes are discarded).
+ */
+public void discardJournal()
+{
+    if(_journal!=null) _journal.discard();
+    _journal = null;
 }
 
 /**
@@ -145,9 +345,11 @@ public void save() throws Exception
  */
 public void updateFile()
 {
+    // Get content XML and stream to bytes sized by last update (avoids building whole document string and, if size
+    // is unchanged, copying the bytes again)
     WebFile file = getSourceFile(true);
     XMLElement xml = getContentXML();
-    byte bytes[] = xml.getBytes();
+    byte[] bytes = XMLWriter.getBytes(xml, _xmlSize); _xmlSize = bytes.length;
     file.setBytes(bytes);
 }
 
@@ -315,12 +517,12 @@ private void addSuperSelectedView(View aView)
 /**
  * Returns whether a given view is selected in the editor.
  */
-public boolean isSelected(View aView)  { return ListUtils.containsId(_selectedViews, aView); }
+public boolean isSelected(View aView)  { return _selectedViews.contains(aView); }
 
 /**
  * Returns whether a given view is super-selected in the editor.
  */
-public boolean isSuperSelected(View aView)  { return ListUtils.containsId(_superSelectedViews, aView); }
+public boolean isSuperSelected(View aView)  { return _superSelectedViews.contains(aView); }
 
 /**
  * Returns the number of super-selected views.
@@ -471,22 +673,13 @@ public View getChildViewAtPoint(View aView, Point aPoint)
     if(aView==null) return null;
     ParentView parView = aView instanceof ParentView? (ParentView)aView : null; if(parView==null) return null;
     
+    // If view grid for view, use it
+    ViewGrid grid = getViewGrid(parView);
+    if(grid!=null) return getChildViewAtPoint(parView, grid, aPoint);
+    
     // Iterate over view children
     for(int i=parView.getChildCount(); i>0; i--) { View child = parView.getChild(i-1);
-        
-        // If not hittable, continue
-        //if(!child.isHittable()) continue;
-        
-        // Get given point in child view coords
-        Point point = child.parentToLocal(aPoint.x, aPoint.y);
-
-        // If child is super selected and point is in child super selected bounds, return child
-        if(isSuperSelected(child) &&
-            getTool(child).getBoundsSuperSelected(child).contains(point.getX(), point.getY()))
-            return child;
-        
-        // If child isn't super selected and contains point, return child
-        else if(child.contains(point.x, point.y))
+        if(isChildViewAtPoint(child, aPoint))
             return child;
     }
     
@@ -494,6 +687,96 @@ public View getChildViewAtPoint(View aView, Point aPoint)
     return null;
 }
 
+/**
+ * Returns the child of the given view hit by the given point, using given view grid to find candidates.
+ */
+View getChildViewAtPoint(ParentView aView, ViewGrid aGrid, Point aPoint)
+{
+    // Get topmost grid candidate hit by point
+    View hit = null; int hitIndex = -1;
+    for(View child : aGrid.getViewsAtPoint(aPoint.x, aPoint.y))
+        if(isChildViewAtPoint(child, aPoint)) { hit = child; hitIndex = child.indexInParent(); break; }
+    
+    // Check super selected children (their super selected bounds can extend past their frame)
+    for(View ssview : _superSelectedViews) { if(ssview.getParent()!=aView) continue;
+        int index = ssview.indexInParent();
+        if(index>hitIndex && isChildViewAtPoint(ssview, aPoint)) { hit = ssview; hitIndex = index; }
+    }
+    
+    // Return hit child
+    return hit;
+}
+
+/**
+ * Returns whether given child is hit by given point (in child parent coords).
+ */
+boolean isChildViewAtPoint(View aChild, Point aPoint)
+{
+    // If not hittable, return false
+    //if(!aChild.isHittable()) return false;
+    
+    // Get given point in child view coords
+    Point point = aChild.parentToLocal(aPoint.x, aPoint.y);
+
+    // If child is super selected, return whether point is in child super selected bounds
+    if(isSuperSelected(aChild))
+        return getTool(aChild).getBoundsSuperSelected(aChild).contains(point.getX(), point.getY());
+    
+    // Return whether child contains point
+    return aChild.contains(point.x, point.y);
+}
+
+/**
+ * Returns the view grid for given parent view (created lazily), or null if parent has too few children to need one.
+ */
+ViewGrid getViewGrid(ParentView aView)
+{
+    ViewGrid grid = _viewGrids.get(aView);
+    if(grid==null && aView.getChildCount()>=VIEW_GRID_MIN)
+        _viewGrids.put(aView, grid = new ViewGrid(aView));
+    return grid;
+}
+
+/**
+ * Updates view grids for given deep change: Updates the frame of changed view and adds/removes changed children.
+ */
+void updateViewGrids(PropChange aPC)
+{
+    // If no grids or source not view, just return
+    if(_viewGrids.isEmpty() || !(aPC.getSource() instanceof View)) return;
+    View view = (View)aPC.getSource();
+    
+    // If view has grid in parent, update frame
+    ViewGrid grid = view.getParent()!=null? _viewGrids.get(view.getParent()) : null;
+    if(grid!=null && grid.containsView(view))
+        grid.updateView(view);
+    
+    // If child added/removed in transaction, just remove grids (rebuilt lazily instead of reindexed per child)
+    if(aPC.getPropertyName()==ParentView.Child_Prop && _txnDepth>0) {
+        _viewGrids.remove(view); if(aPC.getOldValue() instanceof ParentView) pruneViewGrids(); return; }
+    
+    // If child added/removed to view with grid, add/remove it (z-order of other children is kept, so no reindex)
+    if(aPC.getPropertyName()==ParentView.Child_Prop) {
+        View oldChild = (View)aPC.getOldValue(), newChild = (View)aPC.getNewValue();
+        if(oldChild instanceof ParentView) pruneViewGrids();
+        ViewGrid pgrid = _viewGrids.get(view); if(pgrid==null) return;
+        if(oldChild!=null) pgrid.removeView(oldChild);
+        if(newChild!=null) pgrid.addView(newChild, aPC.getIndex());
+    }
+}
+
+/**
+ * Removes grids for parent views no longer in content (like removed view and its nested parent views).
+ */
+void pruneViewGrids()
+{
+    View content = getContent();
+    for(Iterator <ParentView> it=_viewGrids.keySet().iterator(); it.hasNext();) { View par = it.next();
+        while(par!=null && par!=content) par = par.getParent();
+        if(par==null) it.remove();
+    }
+}
+
 /**
  * Returns the first SuperSelected view that accepts children.
  */
@@ -822,6 +1105,11 @@ public void paintAbove(Painter aPntr)
     // Paint proximity guides
     EditorProxGuide.paintProximityGuides(this, aPntr);
     
+    // Paint physics stats, if showing
+    EditorPane ep = getEditorPane(); PhysicsRunner physRunner = ep!=null? ep.getPhysicsRunner() : null;
+    if(physRunner!=null && ep.isShowPhysicsStats() && ep.getEditor()==this) { Rect vrect = getVisRect();
+        physRunner.getStats().paint(aPntr, vrect.x + 10, vrect.y + 10); }
+    
     // Paint DragShape, if set
     if(_dragView!=null) {
         aPntr.setColor(new Color(0,.6,1,.5)); aPntr.setStrokeWidth(3); aPntr.draw(_dragView); }
@@ -873,9 +1161,10 @@ protected void setShowing(boolean aValue)
  */
 public void undo()
 {
-    // If undoer exists, do undo, select views and repaint
-    if(getUndoer()!=null && getUndoer().getUndoSetLast()!=null) {
-        UndoSet undoSet = getUndoer().undo();
+    // If undoer exists, do undo, select views and repaint (EditorUndoer has no last undo set once history evicted)
+    Undoer undoer = getUndoer();
+    if(undoer!=null && undoer.getUndoSetLast()!=null) {
+        UndoSet undoSet = undoer.undo();
         setUndoSelection(undoSet.getUndoSelection());
         repaint();
     }
@@ -929,6 +1218,9 @@ public void deepChange(Object aView, PropChange anEvent)
     if(view instanceof ParentView && ((ParentView)view).isInLayout()) return;
     if(sview instanceof ParentView && ((ParentView)sview).isInLayout()) return;
     
+    // Increment modification count (even if change is coalesced into an existing undo change)
+    _modCount++;
+    
     // If undoer exists, set selected objects and add property change
     Undoer undoer = getUndoer();
     if(undoer!=null) {
@@ -937,8 +1229,12 @@ public void deepChange(Object aView, PropChange anEvent)
         if(undoer.getActiveUndoSet().getChangeCount()==0)
             undoer.setUndoSelection(new ArrayList(getSelectedOrSuperSelectedViews()));
         
-        // Add property change
+        // Add property change (and to autosave journal)
         undoer.addPropChange(anEvent);
+        EditorJournal journal = getJournal(); if(journal!=null) journal.addChange(src, anEvent);
+        
+        // If in transaction, just remember changed view and return (undo save and resets are done on commit)
+        if(_txnDepth>0) { _txnViews.add(sview!=null? sview : view); return; }
         
         // If adding child, add to child animator newborns
         //String pname = anEvent.getPropertyName(); if(pname.equals("Child") && anEvent.getNewValue()!=null) {
@@ -950,13 +1246,63 @@ public void deepChange(Object aView, PropChange anEvent)
         
         // Set updator
         WebFile file = getSourceFile(false);
-        if(file!=null) file.setUpdater(undoer.hasUndos()? _updr : null);
+        if(file!=null) file.setUpdater(undoerHasUndos()? _updr : null);
+    }
+    
+    // Reset EditorPane
+    EditorPane ep = getEditorPane(); if(ep!=null) ep.resetLater();
+}
+
+/**
+ * Begins a mutation transaction with given undo title: Until matching commit, property changes are just added to the
+ * undo set, and undo save, file updater, repaint and editor pane reset are done once on commit. Transactions can nest.
+ * Commit in a finally block, so a failed edit doesn't leave editor in transaction.
+ */
+public void beginTransaction(String anUndoTitle)
+{
+    if(_txnDepth++==0 && anUndoTitle!=null) undoerSetUndoTitle(anUndoTitle);
+}
+
+/**
+ * Commits a mutation transaction: If outermost, repaints changed views and saves undo changes and resets once.
+ */
+public void commitTransaction()
+{
+    // If not outermost transaction or no changes, just return
+    if(_txnDepth==0 || --_txnDepth>0 || _txnViews.isEmpty()) return;
+    
+    // Get bounds of changed views still in editor (in editor coords) and repaint
+    Rect dirty = null;
+    for(View view : _txnViews) {
+        View par = view; while(par!=null && par!=this) par = par.getParent(); if(par==null) continue;
+        Rect bnds = view.localToParent(view.getBoundsLocal(), this).getBounds();
+        if(dirty==null) dirty = bnds; else dirty.union(bnds);
+    }
+    _txnViews.clear();
+    if(dirty!=null) { dirty.inset(-4); repaint(dirty); }
+    
+    // Save UndoerChanges after delay and set updater
+    Undoer undoer = getUndoer();
+    if(undoer!=null) {
+        saveUndoerChangesLater();
+        WebFile file = getSourceFile(false);
+        if(file!=null) file.setUpdater(undoerHasUndos()? _updr : null);
     }
     
     // Reset EditorPane
     EditorPane ep = getEditorPane(); if(ep!=null) ep.resetLater();
 }
 
+/**
+ * Returns the modification count (incremented for every content change).
+ */
+public int getModCount()  { return _modCount; }
+
+/**
+ * Returns whether editor is in a mutation transaction.
+ */
+public boolean isInTransaction()  { return _txnDepth>0; }
+
 // A Shared updater to kick off save
 private WebFile.Updater _updr = file -> updateFile();
 
@@ -0,0 +1,360 @@
+package studio.app;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import snap.util.*;
+import snap.view.*;
+
+/**
+ * An append-only autosave journal of editor changes next to the source file, so that after a crash the document can
+ * be recovered. Simple property changes are journaled as records (view path, property, new value), coalesced by view
+ * and property and appended in batches on a background thread. Other changes (like children added or removed) and
+ * long journals are compacted into a full content snapshot, after which the journal starts over.
+ *
+ * Files: "<source>.journal" has the records since the last snapshot (or since the saved source if no snapshot) and
+ * "<source>.journal.snp" has the last snapshot. The journal header has the checksum of the snapshot it follows, so
+ * records of an older journal (like one left by a crash between the two file replaces) are never replayed on a newer
+ * snapshot.
+ */
+public class EditorJournal {
+    
+    // The editor
+    Editor                  _editor;
+    
+    // The source file, journal file and snapshot file
+    File                    _source, _jfile, _sfile;
+    
+    // The records not yet written (by view path and property, so repeated changes are coalesced)
+    LinkedHashMap <String,String>  _pending = new LinkedHashMap();
+    
+    // The paths of changed views (cleared when children change)
+    Map <View,String>       _paths = new IdentityHashMap();
+    
+    // Whether a snapshot is needed (records are dropped until it is taken) and whether one is being written
+    boolean                 _needsSnapshot, _snapshotting;
+    
+    // Whether a flush is scheduled
+    boolean                 _flushScheduled;
+    
+    // Whether journal was discarded (background tasks still queued do nothing)
+    volatile boolean        _discarded;
+    
+    // The number of records written since last snapshot and the time of last snapshot
+    int                     _recordCount;
+    long                    _snapshotTime;
+    
+    // The executor that writes records and snapshots in order (one background thread)
+    ScheduledExecutorService  _executor;
+    
+    // The header for new journal files (with checksum of last snapshot written, if any)
+    String                  _header = HEADER;
+    
+    // The journal file header
+    static final String     HEADER = "SNAPJOURNAL 1";
+    
+    // The delay between flushes, the min time between snapshots (millis) and the record count that forces a snapshot
+    static final int        FLUSH_DELAY = 500, SNAPSHOT_DELAY = 5000, SNAPSHOT_RECORDS = 10000;
+
+/**
+ * Creates an EditorJournal for given editor and source file.
+ */
+public EditorJournal(Editor anEditor, File aSource)
+{
+    _editor = anEditor; _source = aSource;
+    _jfile = getJournalFile(aSource); _sfile = getSnapshotFile(aSource);
+    _executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "EditorJournal"); t.setDaemon(true); return t; });
+    
+    // If no saved source to replay from or old journal files exist (like content recovered from them), start with
+    // snapshot: Old files are kept until snapshot replaces them in background (so a crash before can still recover)
+    if(!aSource.exists() || hasJournal(aSource)) requestSnapshot();
+}
+
+/**
+ * Returns the source file.
+ */
+public File getSource()  { return _source; }
+
+/**
+ * Adds a change (called from Editor.deepChange on UI thread).
+ */
+public void addChange(Object aSource, PropChange aPC)
+{
+    // If children changed, clear cached view paths (whether or not snapshot is needed, so no path goes stale)
+    if(aPC.getPropertyName()==ParentView.Child_Prop) _paths.clear();
+    
+    // If snapshot needed or discarded, just return (snapshot will cover change)
+    if(_needsSnapshot || _discarded) return;
+    
+    // If change can't be journaled as record (not view, indexed, or value not simple), request snapshot and return
+    String value = aSource instanceof View && aPC.getIndex()<0? encodeValue(aPC.getNewValue()) : null;
+    if(value==null) { requestSnapshot(); return; }
+    
+    // Get view path (if view not in content, just return)
+    View view = (View)aSource;
+    String path = getPath(view); if(path==null) return;
+    
+    // Add record (coalesced by path and property) and schedule flush
+    String key = path + '\t' + aPC.getPropertyName();
+    synchronized(this) {
+        _pending.remove(key); _pending.put(key, key + '\t' + value);
+        if(_flushScheduled) return; _flushScheduled = true;
+    }
+    _executor.schedule(() -> flush(), FLUSH_DELAY, TimeUnit.MILLISECONDS);
+}
+
+/**
+ * Returns the path of given view from editor content ("" for content, otherwise child indexes like "0/3/2").
+ */
+String getPath(View aView)
+{
+    // If cached, just return
+    String path = _paths.get(aView); if(path!=null) return path;
+    
+    // Get path
+    View content = _editor.getContent();
+    if(aView==content) path = "";
+    else if(aView.getParent()==null) return null;
+    else { String ppath = getPath(aView.getParent()); if(ppath==null) return null;
+        int index = aView.indexInParent();
+        path = ppath.length()>0? ppath + '/' + index : String.valueOf(index); }
+    
+    // Cache and return
+    _paths.put(aView, path);
+    return path;
+}
+
+/**
+ * Requests a snapshot of editor content (taken on UI thread when mouse is up, at most every SNAPSHOT_DELAY millis).
+ */
+public void requestSnapshot()
+{
+    // If already needed or discarded, just return
+    if(_needsSnapshot || _discarded) return;
+    _needsSnapshot = true;
+    synchronized(this) { _pending.clear(); }
+    
+    // Schedule snapshot
+    long delay = Math.max(_snapshotTime + SNAPSHOT_DELAY - System.currentTimeMillis(), 0);
+    _executor.schedule(() -> _editor.getEnv().runLater(() -> snapshotLater()), delay, TimeUnit.MILLISECONDS);
+}
+
+/**
+ * Takes snapshot, or if mouse is down, on mouse up.
+ */
+void snapshotLater()
+{
+    if(ViewUtils.isMouseDown()) ViewUtils.runOnMouseUp(() -> snapshotLater());
+    else snapshot();
+}
+
+/**
+ * Takes snapshot of editor content on UI thread and writes it in background (records after are journaled again).
+ */
+protected void snapshot()
+{
+    // If discarded or already done, just return
+    if(_discarded || !_needsSnapshot) return;
+    
+    // Get content XML snapshot (records added from now on follow snapshot)
+    XMLElement xml = _editor.getContentXML();
+    _needsSnapshot = false; _snapshotTime = System.currentTimeMillis();
+    synchronized(this) { _pending.clear(); _snapshotting = true; }
+    
+    // Write snapshot in background, then reset journal and flush records that followed snapshot
+    _executor.execute(() -> {
+        if(_discarded) return;
+        try { writeSnapshot(xml); _recordCount = 0; }
+        catch(IOException e) { System.err.println("EditorJournal.snapshot: " + e); }
+        synchronized(this) { _snapshotting = false; }
+        flush();
+    });
+}
+
+/**
+ * Writes snapshot and new journal (with header for snapshot checksum) to temp files and renames them (on background
+ * thread).
+ */
+void writeSnapshot(XMLElement anXML) throws IOException
+{
+    // Create unique temp files in same directory (so renames stay on same file system)
+    File dir = _sfile.getAbsoluteFile().getParentFile();
+    File stfile = File.createTempFile(_sfile.getName(), ".tmp", dir);
+    File jtfile = File.createTempFile(_jfile.getName(), ".tmp", dir);
+    
+    // Write snapshot (with checksum) and new journal, then replace snapshot and journal: If a crash leaves old journal
+    // with new snapshot, its header doesn't match new snapshot, so its records are skipped (snapshot has them)
+    try {
+        CheckedOutputStream cos = new CheckedOutputStream(new FileOutputStream(stfile), new CRC32());
+        XMLWriter.writeXML(anXML, cos, true);
+        String header = getHeader(cos.getChecksum().getValue());
+        Files.write(jtfile.toPath(), (header + '\n').getBytes(StandardCharsets.UTF_8));
+        Editor.moveFile(stfile, _sfile);
+        Editor.moveFile(jtfile, _jfile);
+        _header = header;
+    }
+    finally { stfile.delete(); jtfile.delete(); }
+}
+
+/**
+ * Appends pending records to journal and syncs to disk (on background thread).
+ */
+void flush()
+{
+    // If discarded, just return
+    if(_discarded) return;
+    
+    // Get pending records (if snapshot being written, just return - snapshot will flush)
+    List <String> records;
+    synchronized(this) { if(_snapshotting) return;
+        _flushScheduled = false; if(_pending.isEmpty()) return;
+        records = new ArrayList(_pending.values()); _pending.clear(); }
+    
+    // Append records (with header if new journal) and sync to disk
+    boolean isNew = !_jfile.exists();
+    try (FileOutputStream fos = new FileOutputStream(_jfile, true)) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+        if(isNew) writer.write(_header + '\n');
+        for(String record : records) { writer.write(record); writer.write('\n'); }
+        writer.flush(); fos.getFD().sync();
+    }
+    catch(IOException e) { System.err.println("EditorJournal.flush: " + e); return; }
+    
+    // If many records since snapshot, request compaction
+    _recordCount += records.size();
+    if(_recordCount>SNAPSHOT_RECORDS) { _recordCount = 0;
+        _editor.getEnv().runLater(() -> requestSnapshot()); }
+}
+
+/**
+ * Closes journal and deletes its files (called when document is saved or changes are discarded).
+ */
+public void discard()
+{
+    // If already discarded, just return
+    if(_discarded) return;
+    _discarded = true;
+    synchronized(this) { _pending.clear(); }
+    
+    // Delete files after any write in progress and shut down executor
+    _executor.execute(() -> deleteJournal(_source));
+    _executor.shutdown();
+}
+
+/**
+ * Returns an encoded value for a simple record value (number, boolean, string or null), or null if not simple.
+ */
+static String encodeValue(Object aValue)
+{
+    if(aValue==null) return "N";
+    if(aValue instanceof Integer) return "I" + aValue;
+    if(aValue instanceof Number) return "D" + ((Number)aValue).doubleValue();
+    if(aValue instanceof Boolean) return "B" + aValue;
+    if(aValue instanceof String) { String str = (String)aValue;
+        return "S" + str.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r"); }
+    return null;
+}
+
+/**
+ * Returns the value for given encoded record value.
+ */
+static Object decodeValue(String aStr)
+{
+    char type = aStr.charAt(0); String str = aStr.substring(1);
+    switch(type) {
+        case 'I': return Integer.valueOf(str);
+        case 'D': return Double.valueOf(str);
+        case 'B': return Boolean.valueOf(str);
+        case 'S': { StringBuffer sb = new StringBuffer();
+            for(int i=0, iMax=str.length(); i<iMax; i++) { char c = str.charAt(i);
+                if(c=='\\' && i+1<iMax) { c = str.charAt(++i); c = c=='t'? '\t' : c=='n'? '\n' : c=='r'? '\r' : c; }
+                sb.append(c); }
+            return sb.toString(); }
+        default: return null;
+    }
+}
+
+/**
+ * Returns the journal header for a snapshot with given checksum.
+ */
+static String getHeader(long aChecksum)  { return HEADER + ' ' + Long.toHexString(aChecksum); }
+
+/**
+ * Returns the journal file for given source file.
+ */
+public static File getJournalFile(File aSource)  { return new File(aSource.getPath() + ".journal"); }
+
+/**
+ * Returns the snapshot file for given source file.
+ */
+public static File getSnapshotFile(File aSource)  { return new File(aSource.getPath() + ".journal.snp"); }
+
+/**
+ * Returns whether given source file has a journal to recover.
+ */
+public static boolean hasJournal(File aSource)
+{
+    return getJournalFile(aSource).exists() || getSnapshotFile(aSource).exists();
+}
+
+/**
+ * Returns the content recovered from journal for given source file: Reads the last snapshot (or saved source) and
+ * replays the journal records. Records that can't be replayed (like a partial last line after a crash) are skipped,
+ * as are all records if journal doesn't follow the snapshot (header checksum differs).
+ */
+public static ParentView getRecoveredContent(File aSource)
+{
+    // Read snapshot or saved source and get journal header expected for it
+    File sfile = getSnapshotFile(aSource), base = sfile.exists()? sfile : aSource;
+    if(!base.exists()) return null;
+    ParentView content = null; String header = HEADER;
+    try { byte bytes[] = Files.readAllBytes(base.toPath());
+        content = new ViewArchiver().getParentView(bytes);
+        if(base==sfile) { CRC32 crc = new CRC32(); crc.update(bytes); header = getHeader(crc.getValue()); } }
+    catch(Exception e) { System.err.println("EditorJournal.getRecoveredContent: " + e); return null; }
+    
+    // Read records and replay (if journal doesn't follow snapshot, just return)
+    File jfile = getJournalFile(aSource); if(!jfile.exists()) return content;
+    try (BufferedReader rdr = Files.newBufferedReader(jfile.toPath(), StandardCharsets.UTF_8)) {
+        if(!header.equals(rdr.readLine())) return content;
+        for(String line=rdr.readLine(); line!=null; line=rdr.readLine())
+            replayRecord(content, line);
+    }
+    catch(IOException e) { System.err.println("EditorJournal.getRecoveredContent: " + e); }
+    return content;
+}
+
+/**
+ * Replays given record on given content.
+ */
+static void replayRecord(ParentView aContent, String aRecord)
+{
+    // Get path, property name and value (if partial record, just return)
+    String parts[] = aRecord.split("\t", 3); if(parts.length<3 || parts[2].length()==0) return;
+    
+    // Get view for path
+    View view = aContent;
+    if(parts[0].length()>0) for(String index : parts[0].split("/")) {
+        int ind = Integer.parseInt(index);
+        if(!(view instanceof ParentView) || ind>=((ParentView)view).getChildCount()) return;
+        view = ((ParentView)view).getChild(ind);
+    }
+    
+    // Set value
+    try { view.setValue(parts[1], decodeValue(parts[2])); }
+    catch(Exception e) { System.err.println("EditorJournal.replayRecord: " + e); }
+}
+
+/**
+ * Deletes journal files for given source file.
+ */
+public static void deleteJournal(File aSource)
+{
+    getJournalFile(aSource).delete(); getSnapshotFile(aSource).delete();
+}
+
+}
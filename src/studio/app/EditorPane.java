@@ -1,4 +1,5 @@
 package studio.app;
+import java.io.File;
 import java.util.*;
 import snap.gfx.*;
 import snap.view.*;
@@ -28,6 +29,9 @@ public class EditorPane extends ViewerPane {
     
     // The PhysicsRunner
     PhysicsRunner          _physRunner;
+    
+    // Whether to show physics stats overlay in preview
+    boolean                _showPhysStats;
 
     // The image for a window frame icon
     static Image           _frameIcon = Image.get(EditorPane.class, "ReportMill16x16.png");
@@ -62,6 +66,27 @@ public EditorPaneMenuBar getMenuBar()  { return _menuBar!=null? _menuBar : (_men
  */
 public EditorPaneMenuBar createMenuBar()  { return new EditorPaneMenuBar(this); }
 
+/**
+ * Returns the PhysicsRunner (when in preview mode).
+ */
+public PhysicsRunner getPhysicsRunner()  { return _physRunner; }
+
+/**
+ * Returns whether editor pane shows physics stats overlay in preview.
+ */
+public boolean isShowPhysicsStats()  { return _showPhysStats; }
+
+/**
+ * Sets whether editor pane shows physics stats overlay in preview.
+ */
+public void setShowPhysicsStats(boolean aValue)
+{
+    if(aValue==_showPhysStats) return;
+    _showPhysStats = aValue;
+    if(_physRunner!=null) _physRunner.setStatsView(aValue? getEditor() : null);
+    getEditor().repaint();
+}
+
 /**
  * Returns whether editor pane shows rulers.
  */
@@ -148,6 +173,8 @@ public void setEditing(boolean aValue)
         runLater(() -> {
             ParentView worldView = content; if(worldView instanceof DocView) worldView = ((DocView)worldView).getPage();
             _physRunner = new PhysicsRunner(worldView);
+            _physRunner.setFixedStep(true);
+            if(_showPhysStats) _physRunner.setStatsView(editor);
             _physRunner.setRunning(true);
             editor.getContentBox().setPickable(true);
         });
@@ -156,7 +183,7 @@ public void setEditing(boolean aValue)
     // If turning preview off, restore real editor
     else {
         setViewer(_realEditor); _realEditor = null;
-        _physRunner.setRunning(false); _physRunner = null;
+        _physRunner.dispose(); _physRunner = null;
     }
     
     // Focus on editor
@@ -297,7 +324,7 @@ public String getWindowTitle()
     String title = getSourceURL()!=null? getSourceURL().getPath() : null; if(title==null) title = "Untitled";
 
     // If has undos, add asterisk. If zoomed, add ZoomFactor
-    if(getEditor().getUndoer()!=null && getEditor().getUndoer().hasUndos()) title = "* " + title;
+    if(getEditor().undoerHasUndos()) title = "* " + title;
     if(!MathUtils.equals(getEditor().getZoomFactor(), 1f))
         title += " @ " + Math.round(getEditor().getZoomFactor()*100) + "%";
     return title;
@@ -372,13 +399,27 @@ public EditorPane open(Object aSource)
                 return epane;
     }
     
+    // If source has autosave journal (editor didn't close cleanly), offer to recover changes
+    ParentView view = null;
+    WebFile file = url!=null? url.getFile() : null; File jfile = file!=null? file.getJavaFile() : null;
+    if(jfile!=null && EditorJournal.hasJournal(jfile)) {
+        DialogBox dbox = new DialogBox("Recover Changes");
+        dbox.setQuestionMessage("Recover unsaved changes to " + url.getPathName() + "?");
+        if(dbox.showConfirmDialog(getUI())) view = EditorJournal.getRecoveredContent(jfile);
+        else EditorJournal.deleteJournal(jfile);
+    }
+    
     // Load document (if not found, just return)
-    ParentView view = getParentView(aSource); if(view==null) return null;
+    boolean recovered = view!=null;
+    if(view==null) view = getParentView(aSource); if(view==null) return null;
 
     // Set document
     getViewer().setContent(view);
     getViewer()._url = url;
     
+    // If recovered, mark document as unsaved and start journal (snapshots recovered content to replace old files)
+    if(recovered) { getEditor().setRecovered(true); getEditor().getJournal(); }
+    
     // If source is string, add to recent files menu
     //if(url!=null) RecentFilesPanel.addRecentFile(url.getString());
     
@@ -413,7 +454,12 @@ protected ParentView getParentView(Object aSource)
 /**
  * Saves the current editor document, running the save panel.
  */
-public void saveAs()
+public void saveAs()  { if(runSavePanel()) save(); }
+
+/**
+ * Runs the save panel and sets source URL to chosen path. Returns false if cancelled.
+ */
+protected boolean runSavePanel()
 {
     // Make sure editor isn't previewing
     //setEditing(true);
@@ -426,10 +472,10 @@ public void saveAs()
         exts = (String[])ex.toArray(new String[ex.size()]);
     }
     
-    // Run save panel, set Document.Source to path and re-save (or just return if cancelled)
-    String path = FilePanel.showSavePanel(getEditor(), getFileDescription(), exts); if(path==null) return;
+    // Run save panel and set Document.Source to path (or just return if cancelled)
+    String path = FilePanel.showSavePanel(getEditor(), getFileDescription(), exts); if(path==null) return false;
     setSourceURL(WebURL.getURL(path));
-    save();
+    return true;
 }
 
 /**
@@ -443,11 +489,34 @@ public void save()
     // Make sure editor isn't previewing
     //setEditing(true);
     
-    // Do actual save - if exception, print stack trace and set error string
+    // Do actual save in background (editing can continue while bytes are written)
+    getEditor().saveInBackground(e -> saveFinished(e));
+}
+
+/**
+ * Saves the current editor document synchronously (used on close, so pane isn't gone before write finishes).
+ * Returns whether document was saved (false if save panel cancelled or save failed).
+ */
+public boolean saveAndWait()
+{
+    // If no source, run save panel (just return false if cancelled)
+    if(getSourceURL()==null && !runSavePanel()) return false;
+    
+    // Do actual save - if exception, show error and return false
     try { getEditor().save(); }
-    catch(Throwable e) {
-        e.printStackTrace();
-        String msg = "The file " + getSourceURL().getPath() + " could not be saved (" + e + ").";
+    catch(Throwable e) { saveFinished(e); return false; }
+    return true;
+}
+
+/**
+ * Called when save is done with null or the save error.
+ */
+protected void saveFinished(Throwable anError)
+{
+    // If error, print stack trace and show error string
+    if(anError!=null) {
+        anError.printStackTrace();
+        String msg = "The file " + getSourceURL().getPath() + " could not be saved (" + anError + ").";
         DialogBox dbox = new DialogBox("Error on Save"); dbox.setErrorMessage(msg);
         dbox.showMessageDialog(getUI());
         return;
@@ -490,8 +559,8 @@ public boolean close()
         DialogBox dbox = new DialogBox("Unsaved Changes");
         dbox.setWarningMessage("Save changes to " + filename + "?"); dbox.setOptions("Save", "Don't Save", "Cancel");
         switch(dbox.showOptionDialog(getUI(), "Save")) {
-            case 0: save();
-            case 1: break;
+            case 0: if(!saveAndWait()) return false; break;
+            case 1: getEditor().discardJournal(); break;
             default: return false;
         }
     }
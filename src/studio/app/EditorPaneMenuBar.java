@@ -45,8 +45,9 @@ protected void resetUI()
     setViewValue("RedoMenuItem", rTitle);
     setViewDisabled("RedoMenuItem", undoer==null || undoer.getRedoSetLast()==null);
     
-    // Update ShowRulersMenuItem
+    // Update ShowRulersMenuItem, ShowPhysicsStatsMenuItem
     setViewValue("ShowRulersMenuItem", getEditorPane().getShowRulers());
+    setViewValue("ShowPhysicsStatsMenuItem", getEditorPane().isShowPhysicsStats());
 }
 
 /**
@@ -176,8 +177,9 @@ protected void respondUI(ViewEvent anEvent)
     if(anEvent.equals("FormatPanelMenuItem")) epane.getAttributesPanel().setVisibleName(AttributesPanel.FORMAT);
     if(anEvent.equals("KeysPanelMenuItem")) epane.getAttributesPanel().setVisibleName(AttributesPanel.KEYS);
     
-    // Handle ShowRulersMenuItem, FeedbackMenuItem, PrefsMenuItem
+    // Handle ShowRulersMenuItem, ShowPhysicsStatsMenuItem, FeedbackMenuItem, PrefsMenuItem
     if(anEvent.equals("ShowRulersMenuItem")) epane.setShowRulers(!epane.getShowRulers());
+    if(anEvent.equals("ShowPhysicsStatsMenuItem")) epane.setShowPhysicsStats(!epane.isShowPhysicsStats());
     //if(anEvent.equals("FeedbackMenuItem")) new FeedbackPanel().showPanel(epane.getUI());
     //if(anEvent.equals("PrefsMenuItem")) new PreferencesPanel().showPanel(epane.getUI());
     
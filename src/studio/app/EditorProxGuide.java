@@ -22,6 +22,15 @@ public class EditorProxGuide {
     
     // The list of rects that need to be repainted for proximity guides
     static List <Rect>  _guidelineRects = new ArrayList();
+    
+    // The list of rects (as lines) for equal spacing guides
+    static List <Rect>  _spacingRects = new ArrayList();
+    
+    // The sorted edges of candidate shapes for current drag (built once per drag)
+    static Edges          _edges;
+    
+    // The max distance for a guide to show and snap
+    static double         _snapDistance = 5;
 
 /**
  * Returns whether proximity guides are enabled.
@@ -37,13 +46,32 @@ public static void setEnabled(boolean aFlag)
     Prefs.get().set("ProximityGuide", aFlag);
 }
 
+/**
+ * Returns the sorted edges of candidate shapes for editor super selected view (cached until selection changes).
+ */
+static Edges getEdges(Editor anEditor)
+{
+    // If edges are for current parent and selection, just return
+    View parent = anEditor.getSuperSelectedView();
+    if(_edges!=null && _edges.parent==parent && ListUtils.equalsId(_edges.selViews, anEditor.getSelectedViews()))
+        return _edges;
+    
+    // Create edges for candidate shapes
+    return _edges = new Edges(parent, anEditor.getSelectedViews(), getCandidateShapes(anEditor));
+}
+
+/**
+ * Clears the edges cached for current drag (call when drag ends).
+ */
+public static void clearEdges()  { _edges = null; }
+
 /**
  * Empties the guideline list and marks the old guideline region for repaint
  */
 public static void clearGuidelines(Editor anEditor)
 {
     markGuidelinesDirty(anEditor);
-    _guidelineRects.clear();
+    _guidelineRects.clear(); _spacingRects.clear();
 }
 
 /**
@@ -51,13 +79,13 @@ public static void clearGuidelines(Editor anEditor)
  */
 public static void markGuidelinesDirty(Editor anEditor)
 {
-    // If no GuidelineRects, just return
-    if(_guidelineRects.size()==0) return;
+    // If no GuidelineRects or SpacingRects, just return
+    if(_guidelineRects.size()==0 && _spacingRects.size()==0) return;
 
     // Get copy of first rect and union with successive rects
-    Rect dirty = _guidelineRects.get(0).clone();
-    for(int i=1; i<_guidelineRects.size(); i++)
-        dirty.union(_guidelineRects.get(i));
+    Rect dirty = null;
+    for(Rect rect : _guidelineRects) if(dirty==null) dirty = rect.clone(); else dirty.union(rect);
+    for(Rect rect : _spacingRects) if(dirty==null) dirty = rect.clone(); else dirty.union(rect);
     
     // Outset by 2 to cover stroke and repaint rect
     dirty.inset(-2, -2);
@@ -69,8 +97,8 @@ public static void markGuidelinesDirty(Editor anEditor)
  */
 public static void paintProximityGuides(Editor anEditor, Painter aPntr)
 {
-    // If no GuidelineRects, just return
-    if(_guidelineRects.size()==0) return;
+    // If no GuidelineRects or SpacingRects, just return
+    if(_guidelineRects.size()==0 && _spacingRects.size()==0) return;
     
     // Set color to blue and stroke to 1.3pt dashed line
     aPntr.setColor(Color.BLUE);
@@ -79,6 +107,14 @@ public static void paintProximityGuides(Editor anEditor, Painter aPntr)
     // Draw proximity guide lines (with AntiAliasing on?)
     boolean aa = aPntr.setAntialiasing(true);
     for(Rect r : _guidelineRects) aPntr.drawLine(r.x, r.y, r.getMaxX(), r.getMaxY());
+    
+    // Draw equal spacing guide lines with end ticks
+    aPntr.setColor(new Color(.9,.2,.5)); aPntr.setStroke(Stroke.Stroke1);
+    for(Rect r : _spacingRects) { aPntr.drawLine(r.x, r.y, r.getMaxX(), r.getMaxY());
+        if(r.height==0) {
+            aPntr.drawLine(r.x, r.y-3, r.x, r.y+3); aPntr.drawLine(r.getMaxX(), r.y-3, r.getMaxX(), r.y+3); }
+        else { aPntr.drawLine(r.x-3, r.y, r.x+3, r.y); aPntr.drawLine(r.x-3, r.getMaxY(), r.x+3, r.getMaxY()); }
+    }
     aPntr.setAntialiasing(aa);
 }
 
@@ -99,16 +135,17 @@ public static List <View> getCandidateShapes(Editor anEditor)
         return Collections.emptyList();
     
     // Get all peers of selected shapes
-    List candidateShapes = ArrayUtils.asArrayList(parent.getChildren());
-    for(int i=0, iMax=anEditor.getSelectedViewCount(); i<iMax; i++)
-        ListUtils.removeId(candidateShapes, anEditor.getSelectedView(i));
+    List candidateShapes = new ArrayList(parent.getChildCount());
+    for(View child : parent.getChildren())
+        if(!anEditor.isSelected(child))
+            candidateShapes.add(child);
     
     // Optionally, also check against the bounds of the parent.
     // The "stepParent" is merely an empty shape whose bounds match the parent, but in the same coordinate
     // system as the other candidate shapes.
     if(_includeSuperSelectedShape) {
         View stepParent = new BoxView(); //stepParent.copyShape(parent);
-        stepParent.setXY(0f, 0f);
+        stepParent.setBounds(0, 0, parent.getWidth(), parent.getHeight());
         candidateShapes.add(stepParent);
     }
     
@@ -121,6 +158,9 @@ public static List <View> getCandidateShapes(Editor anEditor)
  */
 public static void createGuidelines(Editor anEditor)
 {
+    // If disabled, just return
+    if(!_enabled) return;
+    
     // If not in select tool drag move or resize, just return
     SelectTool.DragMode dragMode = anEditor.getSelectTool().getDragMode();
     if(dragMode!=SelectTool.DragMode.Move && dragMode!=SelectTool.DragMode.Resize)
@@ -130,17 +170,13 @@ public static void createGuidelines(Editor anEditor)
     if(anEditor.getSelectedViewCount()==0)
         return;
     
-    // Get parent of selected shapes (just return if structured table row)
+    // Get parent of selected shapes, bounds and edges of candidate shapes
     View parent = anEditor.getSuperSelectedView();
-    
-    // Get candidate shapes for editor
-    List candidateShapes = getCandidateShapes(anEditor);
-    
-    // Get bounds
-    Rect bounds = null;//RMShapeUtils.getBoundsOfChildren(parent, anEditor.getSelectedShapes());
+    Rect bounds = getSelectedBounds(anEditor);
+    Edges edges = getEdges(anEditor);
     
     // Create guidelines
-    createGuidelines(anEditor, parent, bounds, candidateShapes);
+    createGuidelines(anEditor, parent, bounds, edges);
 }
 
 /**
@@ -148,6 +184,15 @@ public static void createGuidelines(Editor anEditor)
  * Guides are calculated between the bounds rectangle and each of the candidateShapes, within the parent RMShape.
  */
 public static void createGuidelines(Editor anEditor, View parent, Rect bounds, List candidateShapes)
+{
+    createGuidelines(anEditor, parent, bounds, new Edges(parent, Collections.EMPTY_LIST, candidateShapes));
+}
+
+/**
+ * Recalculates all the proximity guides for given bounds and edges and marks dirty region in editor for old & new
+ * guide regions.
+ */
+static void createGuidelines(Editor anEditor, View parent, Rect bounds, Edges theEdges)
 {
     // If disabled, just return
     if(!_enabled) return;
@@ -155,114 +200,71 @@ public static void createGuidelines(Editor anEditor, View parent, Rect bounds, L
     // Empty list and mark old guides dirty
     clearGuidelines(anEditor);
 
-    // If no candidate shapes, just return
-    if(candidateShapes==null || candidateShapes.isEmpty()) return;
+    // If no bounds or candidate edges, just return
+    if(bounds==null || theEdges.isEmpty()) return;
     
-    double minDX = 9999, maxDX = 9999, minDY = 9999, maxDY = 9999;
-    View minDXminYShape=null, minDXmaxYShape=null, maxDXminYShape=null, maxDXmaxYShape=null;
-    View minDYminXShape=null, minDYmaxXShape=null, maxDYminXShape=null, maxDYmaxXShape=null;
-    double delta, x1, y1, x2, y2;
-    Point p1, p2;
-
-    // Iterate over children to see which is the closest to selectedShapes min/max X
-    for(int i=0, iMax=candidateShapes.size(); i<iMax; i++) {
-
-        // Get current child
-        View child = (View)candidateShapes.get(i);
-
-        /*delta=Math.abs(child.getFrameX() - bounds.x);
-        if (delta < minDX) {
-            minDX = delta;
-            minDXminYShape = minDXmaxYShape=child;
-        }
-        else if(delta == minDX) {
-            if(child.getFrameY() < minDXminYShape.getFrameY())
-                minDXminYShape = child;
-            if(child.getFrameMaxY() > minDXmaxYShape.getFrameMaxY())
-                minDXmaxYShape = child;
-        }
-
-        delta = Math.abs(child.getFrameMaxX() - bounds.getMaxX());
-        if (delta < maxDX) {
-            maxDX = delta;
-            maxDXminYShape = maxDXmaxYShape=child;
-        }
-        else if(delta == maxDX) {
-            if(child.getFrameY() < maxDXminYShape.getFrameY())
-                maxDXminYShape = child;
-            if(child.getFrameMaxY() > maxDXmaxYShape.getFrameMaxY())
-                maxDXmaxYShape = child;
-        }
-
-        delta=Math.abs(child.getFrameY() - bounds.y);
-        if (delta < minDY) {
-            minDY = delta;
-            minDYminXShape=minDYmaxXShape=child;
-        }
-        else if(delta==minDY) {
-            if(child.getFrameX() < minDYminXShape.getFrameX())
-                minDYminXShape = child;
-            if(child.getFrameMaxX() > minDYmaxXShape.getFrameMaxX())
-                minDYmaxXShape = child;
-        }
-
-        delta = Math.abs(child.getFrameMaxY() - bounds.getMaxY());
-        if(delta<maxDY) {
-            maxDY = delta;
-            maxDYminXShape = maxDYmaxXShape=child;
-        }
-        else if(delta==maxDY) {
-            if(child.getFrameX() < maxDYminXShape.getFrameX())
-                maxDYminXShape = child;
-            if(child.getFrameMaxX() > maxDYmaxXShape.getFrameMaxX())
-                maxDYmaxXShape = child;
-        }*/
+    // Get nearest vertical edge to bounds left/center/right and add guideline for it
+    double xs[] = { bounds.x, bounds.getMidX(), bounds.getMaxX() };
+    int xi = theEdges.getNearest(theEdges.xVals, xs, _snapDistance);
+    if(xi>=0) { double x = theEdges.xVals[xi];
+        double y1 = Math.min(bounds.y, theEdges.getMin(theEdges.xVals, theEdges.xMins, x));
+        double y2 = Math.max(bounds.getMaxY(), theEdges.getMax(theEdges.xVals, theEdges.xMaxs, x));
+        addGuideline(anEditor, parent, x, y1, x, y2);
     }
     
-    // Add any new guides to guidelines list
-    /*if (minDX <= maxDX && minDX < 5) {
-        x1 = minDXminYShape.getFrameX();
-        y1 = Math.min(bounds.y, minDXminYShape.getFrameY());
-        y2 = Math.max(bounds.getMaxY(), minDXmaxYShape.getFrameMaxY());
-        p1 = anEditor.convertFromShape(x1, y1, parent);
-        p2 = anEditor.convertFromShape(x1, y2, parent);
-        addGuideline(p1, p2);
+    // If no vertical edge guide, add equal horizontal spacing guides
+    List <double[]> segs = new ArrayList();
+    if(xi<0 && !Double.isNaN(theEdges.hgaps.getDelta(bounds.x, bounds.getMaxX(), bounds.y, bounds.getMaxY(),
+        _snapDistance, segs)))
+        for(double seg[] : segs) addSpacing(anEditor, parent, seg[0], seg[2], seg[1], seg[2]);
+    
+    // Get nearest horizontal edge to bounds top/middle/bottom and add guideline for it
+    double ys[] = { bounds.y, bounds.getMidY(), bounds.getMaxY() };
+    int yi = theEdges.getNearest(theEdges.yVals, ys, _snapDistance);
+    if(yi>=0) { double y = theEdges.yVals[yi];
+        double x1 = Math.min(bounds.x, theEdges.getMin(theEdges.yVals, theEdges.yMins, y));
+        double x2 = Math.max(bounds.getMaxX(), theEdges.getMax(theEdges.yVals, theEdges.yMaxs, y));
+        addGuideline(anEditor, parent, x1, y, x2, y);
     }
+    
+    // If no horizontal edge guide, add equal vertical spacing guides
+    segs.clear();
+    if(yi<0 && !Double.isNaN(theEdges.vgaps.getDelta(bounds.y, bounds.getMaxY(), bounds.x, bounds.getMaxX(),
+        _snapDistance, segs)))
+        for(double seg[] : segs) addSpacing(anEditor, parent, seg[2], seg[0], seg[2], seg[1]);
 
-    if (maxDX <= minDX && maxDX < 5) {
-        x1 = maxDXminYShape.getFrameMaxX();
-        y1 = Math.min(bounds.y, maxDXminYShape.getFrameY());
-        y2 = Math.max(bounds.getMaxY(), maxDXmaxYShape.getFrameMaxY());
-        p1 = anEditor.convertFromShape(x1, y1, parent);
-        p2 = anEditor.convertFromShape(x1, y2, parent);
-        addGuideline(p1, p2);
-    }
+    // Mark new guides dirty
+    markGuidelinesDirty(anEditor);
+}
 
-    if (minDY <= maxDY && minDY < 5) {
-        y1 = minDYminXShape.getFrameY();
-        x1 = Math.min(bounds.x, minDYminXShape.getFrameX());
-        x2 = Math.max(bounds.getMaxX(), minDYmaxXShape.getFrameMaxX());
-        p1 = anEditor.convertFromShape(x1, y1, parent);
-        p2 = anEditor.convertFromShape(x2, y1, parent);
-        addGuideline(p1, p2);
-    }
-    
-    if (maxDY <= minDY && maxDY < 5) {
-        y1 = maxDYminXShape.getFrameMaxY();
-        x1 = Math.min(bounds.x, maxDYminXShape.getFrameX());
-        x2 = Math.max(bounds.getMaxX(), maxDYmaxXShape.getFrameMaxX());
-        p1 = anEditor.convertFromShape(x1, y1, parent);
-        p2 = anEditor.convertFromShape(x2, y1, parent);
-        addGuideline(p1, p2);
-    }
+/**
+ * Adds a guideline rect for the given points in parent coords.
+ */
+private static void addGuideline(Editor anEditor, View aParent, double x1, double y1, double x2, double y2)
+{
+    Point p1 = aParent.localToParent(x1, y1, anEditor), p2 = aParent.localToParent(x2, y2, anEditor);
+    _guidelineRects.add(Rect.get(p1, p2));
+}
 
-    markGuidelinesDirty(anEditor);*/
+/**
+ * Adds an equal spacing guide rect for the given points in parent coords.
+ */
+private static void addSpacing(Editor anEditor, View aParent, double x1, double y1, double x2, double y2)
+{
+    Point p1 = aParent.localToParent(x1, y1, anEditor), p2 = aParent.localToParent(x2, y2, anEditor);
+    _spacingRects.add(Rect.get(p1, p2));
 }
 
 /**
- * Adds a guideline rect for the given points.
+ * Returns the bounds of editor selected shapes in parent coords.
  */
-//private static void addGuideline(Point p1, Point p2)  { _guidelineRects.add(Rect.get(p1, p2)); }
+static Rect getSelectedBounds(Editor anEditor)
+{
+    Rect bounds = null;
+    for(View view : anEditor.getSelectedViews()) { Rect vbnds = view.getBoundsParent();
+        if(bounds==null) bounds = vbnds; else bounds.union(vbnds); }
+    return bounds;
+}
 
 /**
  * Returns the given point snapped to relevant proximity guides.
@@ -284,87 +286,260 @@ public static Point pointSnappedToProximityGuides(Editor anEditor, Point aPoint,
     // If drag mode is not move or resize, just return point
     if(aDragMode!=SelectTool.DragMode.Move && aDragMode!=SelectTool.DragMode.Resize)
         return aPoint;
-
-    // Get parent
-    View parent = anEditor.getSuperSelectedView();
     
-    // Get list of selected shapes
-    List selectedShapes = anEditor.getSelectedViews();
-    
-    // Get list of candidate shapes
-    List candidateShapes = getCandidateShapes(anEditor);
+    // If no selected shapes, just return point
+    if(anEditor.getSelectedViewCount()==0)
+        return aPoint;
 
-    // Declare variable for bounds
-    Rect bounds;
+    // Get edges of candidate shapes
+    Edges edges = getEdges(anEditor); if(edges.isEmpty()) return aPoint;
 
-    // If mode is move, set bounds to snap the entire bounding box
-    if(aDragMode==SelectTool.DragMode.Move)
-        bounds = null;//RMShapeUtils.getBoundsOfChildren(parent, selectedShapes);
+    // If mode is move, set bounds to snap the entire bounding box (otherwise, just snap a handle at point)
+    Rect bounds = aDragMode==SelectTool.DragMode.Move? getSelectedBounds(anEditor) :
+        new Rect(aPoint.x, aPoint.y, 0, 0);
     
-    // If mode is resize, set bounds to just snap a handle
-    //else { bounds = new Rect(aPoint.getX(), aPoint.getY(), 0, 0); parent.convertRectFromShape(bounds, null); }
-
-    // Declare variables for minDX, maxDX, minDY and maxDY
-    double minDX = 9999;
-    double maxDX = 9999;
-    double minDY = 9999;
-    double maxDY = 9999;
+    // Get nearest vertical edge to bounds left/center/right and nearest horizontal edge to top/middle/bottom
+    double xs[] = { bounds.x, bounds.getMidX(), bounds.getMaxX() };
+    double ys[] = { bounds.y, bounds.getMidY(), bounds.getMaxY() };
+    double dx = edges.getNearestDelta(edges.xVals, xs, _snapDistance);
+    double dy = edges.getNearestDelta(edges.yVals, ys, _snapDistance);
     
-    // Declare variables for minDX, maxDX, minDY, maxDY shapes
-    View minDXShape = null;
-    View maxDXShape = null;
-    View minDYShape = null;
-    View maxDYShape = null;
-
-    // Iterate over children to see which is the closest to selectedShapes min/max X
-    for (int i=0, iMax=candidateShapes.size(); i < iMax; i++) {
+    // If moving and no edge in snap distance (even if already aligned), snap to equal spacing with neighbors
+    // (same test as createGuidelines, so snap agrees with guides painted)
+    if(aDragMode==SelectTool.DragMode.Move) {
+        boolean xEdge = edges.getNearest(edges.xVals, xs, _snapDistance)>=0;
+        boolean yEdge = edges.getNearest(edges.yVals, ys, _snapDistance)>=0;
+        if(!xEdge) { double d = edges.hgaps.getDelta(bounds.x, bounds.getMaxX(), bounds.y, bounds.getMaxY(),
+            _snapDistance, null); if(!Double.isNaN(d)) dx = d; }
+        if(!yEdge) { double d = edges.vgaps.getDelta(bounds.y, bounds.getMaxY(), bounds.x, bounds.getMaxX(),
+            _snapDistance, null); if(!Double.isNaN(d)) dy = d; }
+    }
 
-        // Get current child
-        View child = (View)candidateShapes.get(i);
+    // Return point offset to nearest edges
+    return dx!=0 || dy!=0? new Point(aPoint.x + dx, aPoint.y + dy) : aPoint;
+}
 
-        /*double dx1 = Math.abs(child.getFrameX() - bounds.x);
-        if(dx1 < minDX) {
-            minDX = dx1;
-            minDXShape = child;
+/**
+ * The edges of candidate shapes in parent coords, sorted for binary search: Left/center/right (with top/bottom
+ * extents for guidelines) and top/middle/bottom (with left/right extents).
+ */
+static class Edges {
+    
+    // The parent and selected views edges were created for
+    View           parent;
+    List <View>    selViews;
+    
+    // The sorted vertical edge x values, with the min/max y of their shapes
+    double         xVals[], xMins[], xMaxs[];
+    
+    // The sorted horizontal edge y values, with the min/max x of their shapes
+    double         yVals[], yMins[], yMaxs[];
+    
+    // The gaps between neighbor shapes along x (shapes in rows) and along y (shapes in columns)
+    Gaps           hgaps, vgaps;
+    
+    /** Creates edges for given candidate shapes. */
+    Edges(View aParent, List <View> theSelViews, List <View> theShapes)
+    {
+        // Set parent and selected views
+        parent = aParent; selViews = new ArrayList(theSelViews);
+        
+        // Get shape bounds
+        int scount = theShapes.size();
+        double bx[] = new double[scount], by[] = new double[scount];
+        double bmx[] = new double[scount], bmy[] = new double[scount];
+        for(int i=0; i<scount; i++) { Rect b = theShapes.get(i).getBoundsParent();
+            bx[i] = b.x; by[i] = b.y; bmx[i] = b.getMaxX(); bmy[i] = b.getMaxY(); }
+        
+        // Get gaps between shapes along x and y
+        hgaps = new Gaps(bx, bmx, by, bmy); vgaps = new Gaps(by, bmy, bx, bmx);
+        
+        // Get edges and extents for shape bounds
+        int count = scount*3;
+        double xv[] = new double[count], xmin[] = new double[count], xmax[] = new double[count];
+        double yv[] = new double[count], ymin[] = new double[count], ymax[] = new double[count];
+        for(int i=0; i<scount; i++) { Rect b = new Rect(bx[i], by[i], bmx[i] - bx[i], bmy[i] - by[i]);
+            for(int j=0; j<3; j++) { int k = i*3 + j;
+                xv[k] = j==0? b.x : j==1? b.getMidX() : b.getMaxX(); xmin[k] = b.y; xmax[k] = b.getMaxY();
+                yv[k] = j==0? b.y : j==1? b.getMidY() : b.getMaxY(); ymin[k] = b.x; ymax[k] = b.getMaxX();
+            }
         }
-
-        double dx2 = Math.abs(child.getFrameMaxX() - bounds.getMaxX());
-        if(dx2 < maxDX) {
-            maxDX = dx2;
-            maxDXShape = child;
+        
+        // Sort edges
+        int xorder[] = getSortOrder(xv), yorder[] = getSortOrder(yv);
+        xVals = reorder(xv, xorder); xMins = reorder(xmin, xorder); xMaxs = reorder(xmax, xorder);
+        yVals = reorder(yv, yorder); yMins = reorder(ymin, yorder); yMaxs = reorder(ymax, yorder);
+    }
+    
+    /** Returns whether there are no edges. */
+    boolean isEmpty()  { return xVals.length==0; }
+    
+    /** Returns index of the edge value nearest to any of given values within given distance (or -1). */
+    int getNearest(double theVals[], double theTargets[], double aDist)
+    {
+        int index = -1; double best = aDist;
+        for(double target : theTargets) { int i = getNearest(theVals, target);
+            double d = i>=0? Math.abs(theVals[i] - target) : Double.MAX_VALUE;
+            if(d<=best) { best = d; index = i; }
         }
-
-        double dy1 = Math.abs(child.getFrameY() - bounds.y);
-        if(dy1 < minDY) {
-            minDY = dy1;
-            minDYShape = child;
+        return index;
+    }
+    
+    /** Returns the offset to move nearest of given values onto nearest edge within given distance (or 0). */
+    double getNearestDelta(double theVals[], double theTargets[], double aDist)
+    {
+        double delta = 0, best = aDist;
+        for(double target : theTargets) { int i = getNearest(theVals, target); if(i<0) continue;
+            double d = theVals[i] - target;
+            if(Math.abs(d)<=best) { best = Math.abs(d); delta = d; }
         }
-
-        double dy2 = Math.abs(child.getFrameMaxY() - bounds.getMaxY());
-        if(dy2 < maxDY) {
-            maxDY = dy2;
-            maxDYShape = child;
-        }*/
+        return delta;
     }
+    
+    /** Returns the index of the edge value nearest given value with binary search (or -1 if no edges). */
+    static int getNearest(double theVals[], double aValue)
+    {
+        if(theVals.length==0) return -1;
+        int i = Arrays.binarySearch(theVals, aValue); if(i>=0) return i;
+        int ins = -i - 1; if(ins==0) return 0; if(ins==theVals.length) return ins - 1;
+        return aValue - theVals[ins-1] <= theVals[ins] - aValue? ins - 1 : ins;
+    }
+    
+    /** Returns the min extent of edges with given value. */
+    double getMin(double theVals[], double theMins[], double aValue)
+    {
+        double min = Double.MAX_VALUE;
+        for(int i=getFirst(theVals, aValue); i<theVals.length && theVals[i]==aValue; i++)
+            min = Math.min(min, theMins[i]);
+        return min;
+    }
+    
+    /** Returns the max extent of edges with given value. */
+    double getMax(double theVals[], double theMaxs[], double aValue)
+    {
+        double max = -Double.MAX_VALUE;
+        for(int i=getFirst(theVals, aValue); i<theVals.length && theVals[i]==aValue; i++)
+            max = Math.max(max, theMaxs[i]);
+        return max;
+    }
+    
+    /** Returns the index of first edge with value equal or greater than given value. */
+    static int getFirst(double theVals[], double aValue)
+    {
+        int lo = 0, hi = theVals.length;
+        while(lo<hi) { int mid = (lo + hi)>>>1; if(theVals[mid]<aValue) lo = mid + 1; else hi = mid; }
+        return lo;
+    }
+    
+    /** Returns the indexes of given values in sorted order. */
+    static int[] getSortOrder(double theVals[])
+    {
+        Integer order[] = new Integer[theVals.length]; for(int i=0; i<order.length; i++) order[i] = i;
+        Arrays.sort(order, (i1,i2) -> Double.compare(theVals[i1], theVals[i2]));
+        int order2[] = new int[order.length]; for(int i=0; i<order.length; i++) order2[i] = order[i];
+        return order2;
+    }
+    
+    /** Returns given values in given order. */
+    static double[] reorder(double theVals[], int theOrder[])
+    {
+        double vals[] = new double[theVals.length];
+        for(int i=0; i<vals.length; i++) vals[i] = theVals[theOrder[i]];
+        return vals;
+    }
+}
 
-    // If
-    /*if(minDX <= maxDX && minDX < 5)
-        aPoint.setX(aPoint.getX() - (bounds.getX() - minDXShape.getFrameX()));
-
-    // If
-    if(maxDX < minDX && maxDX < 5)
-        aPoint.setX(aPoint.getX() - (float)(bounds.getMaxX() - maxDXShape.getFrameMaxX()));
-
-    // If
-    if(minDY <= maxDY && minDY < 5)
-        aPoint.setY(aPoint.getY() - (bounds.getY() - minDYShape.getFrameY()));
-
-    // If
-    if(maxDY < minDY && maxDY < 5)
-        aPoint.setY(aPoint.getY() - (float)(bounds.getMaxY() - maxDYShape.getFrameMaxY()));*/
-
-    // Return point
-    return aPoint;
+/**
+ * The gaps between neighbor shapes along one axis (x for shapes in rows, y for shapes in columns), to find equal
+ * spacing for moving bounds. Shapes are neighbors if they overlap on the cross axis. Shapes are sorted by their min
+ * and max on the axis (and each shape's previous/next neighbor found) once, so each drag event only needs a binary
+ * search and a short walk to find the neighbors of the moving bounds.
+ */
+static class Gaps {
+    
+    // The shape min/max on axis and on cross axis (by shape index)
+    double         lo[], hi[], clo[], chi[];
+    
+    // The shape indexes sorted by max and by min on axis, with the sorted values
+    int            byHi[], byLo[];
+    double         his[], los[];
+    
+    // The previous and next neighbor of each shape on axis (or -1)
+    int            prev[], next[];
+    
+    /** Creates gaps for given shape extents. */
+    Gaps(double theLo[], double theHi[], double theCLo[], double theCHi[])
+    {
+        // Set extents and sort by max and min on axis
+        lo = theLo; hi = theHi; clo = theCLo; chi = theCHi;
+        byHi = Edges.getSortOrder(hi); his = Edges.reorder(hi, byHi);
+        byLo = Edges.getSortOrder(lo); los = Edges.reorder(lo, byLo);
+        
+        // Find previous/next neighbor of each shape
+        prev = new int[lo.length]; next = new int[lo.length];
+        for(int i=0; i<lo.length; i++) {
+            prev[i] = findPrev(lo[i], clo[i], chi[i], i);
+            next[i] = findNext(hi[i], clo[i], chi[i], i);
+        }
+    }
+    
+    /** Returns the shape with nearest max before given min that overlaps given cross extent (or -1). */
+    int findPrev(double aLo, double aCLo, double aCHi, int anExclude)
+    {
+        for(int k=Edges.getFirst(his, aLo + .001) - 1; k>=0; k--) { int i = byHi[k];
+            if(i!=anExclude && clo[i]<aCHi && aCLo<chi[i]) return i; }
+        return -1;
+    }
+    
+    /** Returns the shape with nearest min after given max that overlaps given cross extent (or -1). */
+    int findNext(double aHi, double aCLo, double aCHi, int anExclude)
+    {
+        for(int k=Edges.getFirst(los, aHi - .001); k<los.length; k++) { int i = byLo[k];
+            if(i!=anExclude && clo[i]<aCHi && aCLo<chi[i]) return i; }
+        return -1;
+    }
+    
+    /**
+     * Returns the offset along axis that puts given moving extents at an equal gap with its neighbors, if within given
+     * distance (or NaN). If segments list is given, adds the equal gaps as segments (axis min, axis max, cross pos).
+     */
+    double getDelta(double aLo, double aHi, double aCLo, double aCHi, double aDist, List <double[]> theSegs)
+    {
+        // Get previous/next neighbors of moving extents
+        int p = findPrev(aLo, aCLo, aCHi, -1), n = findNext(aHi, aCLo, aCHi, -1);
+        double best = Double.NaN; int kind = 0;
+        
+        // Check centered between neighbors
+        if(p>=0 && n>=0) { double d = (hi[p] + lo[n] - (aHi - aLo))/2 - aLo;
+            if(Math.abs(d)<=aDist) { best = d; kind = 1; } }
+        
+        // Check same gap as previous neighbor and its previous neighbor
+        if(p>=0 && prev[p]>=0) { double d = hi[p] + (lo[p] - hi[prev[p]]) - aLo;
+            if(Math.abs(d)<=aDist && !(Math.abs(d)>=Math.abs(best))) { best = d; kind = 2; } }
+        
+        // Check same gap as next neighbor and its next neighbor
+        if(n>=0 && next[n]>=0) { double d = lo[n] - (lo[next[n]] - hi[n]) - aHi;
+            if(Math.abs(d)<=aDist && !(Math.abs(d)>=Math.abs(best))) { best = d; kind = 3; } }
+        
+        // Add segments for equal gaps
+        if(theSegs!=null && kind>0) { double mlo = aLo + best, mhi = aHi + best;
+            if(kind==1) { addSeg(theSegs, hi[p], mlo, clo[p], chi[p], aCLo, aCHi);
+                addSeg(theSegs, mhi, lo[n], clo[n], chi[n], aCLo, aCHi); }
+            else if(kind==2) { int pp = prev[p]; addSeg(theSegs, hi[pp], lo[p], clo[pp], chi[pp], clo[p], chi[p]);
+                addSeg(theSegs, hi[p], mlo, clo[p], chi[p], aCLo, aCHi); }
+            else { int nn = next[n]; addSeg(theSegs, mhi, lo[n], clo[n], chi[n], aCLo, aCHi);
+                addSeg(theSegs, hi[n], lo[nn], clo[n], chi[n], clo[nn], chi[nn]); }
+        }
+        
+        // Return offset
+        return best;
+    }
+    
+    /** Adds a gap segment at middle of the cross overlap of given cross extents. */
+    static void addSeg(List <double[]> theSegs, double aLo, double aHi, double c1, double c2, double c3, double c4)
+    {
+        theSegs.add(new double[] { aLo, aHi, (Math.max(c1, c3) + Math.min(c2, c4))/2 });
+    }
 }
 
-}
\ No newline at end of file
+}
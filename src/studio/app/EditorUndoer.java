@@ -0,0 +1,203 @@
+package studio.app;
+import java.util.*;
+import snap.gfx.Image;
+import snap.util.*;
+
+/**
+ * An Undoer subclass for Editor that coalesces repeated changes of the same view property in an undo set (keeping the
+ * first old value and last new value), so drags don't record a change per mouse event, and that bounds the undo
+ * history by undo set count and estimated bytes, evicting oldest undo sets first. Undo stops at the newest evicted
+ * undo set (evicted sets have their changes released and are never returned as last undo set or undone).
+ */
+public class EditorUndoer extends Undoer {
+    
+    // The indexes of coalescable changes in the active undo set changes (by source and property name)
+    Map <Object,Map<String,Integer>>  _merged = new IdentityHashMap();
+    
+    // The undo set the merged changes belong to
+    UndoSet                _mergedSet;
+    
+    // The saved undo sets in undo history (oldest first) with estimated bytes
+    LinkedList <Entry>     _history = new LinkedList();
+    
+    // The total estimated bytes of undo history
+    long                   _historyBytes;
+    
+    // The newest undo set evicted from history (undo stops here, older evicted sets are unreachable)
+    UndoSet                _evictedLast;
+    
+    // The max number of undo sets and max estimated bytes in undo history
+    int                    _maxUndoCount = 200;
+    long                   _maxUndoBytes = 64L*1024*1024;
+
+/**
+ * Returns the max number of undo sets in undo history.
+ */
+public int getMaxUndoCount()  { return _maxUndoCount; }
+
+/**
+ * Sets the max number of undo sets in undo history.
+ */
+public void setMaxUndoCount(int aValue)  { _maxUndoCount = aValue; trimHistory(); }
+
+/**
+ * Returns the max estimated bytes of undo history.
+ */
+public long getMaxUndoBytes()  { return _maxUndoBytes; }
+
+/**
+ * Sets the max estimated bytes of undo history.
+ */
+public void setMaxUndoBytes(long aValue)  { _maxUndoBytes = aValue; trimHistory(); }
+
+/**
+ * Returns the estimated bytes of undo history.
+ */
+public long getHistoryBytes()  { return _historyBytes; }
+
+/**
+ * Returns whether given undo set is the newest evicted from undo history (where undo stops).
+ */
+public boolean isEvicted(UndoSet anUndoSet)  { return anUndoSet!=null && anUndoSet==_evictedLast; }
+
+/**
+ * Override to return null if last undo set was evicted (so undo is disabled at start of bounded history).
+ */
+public UndoSet getUndoSetLast()
+{
+    UndoSet uset = super.getUndoSetLast();
+    return isEvicted(uset)? null : uset;
+}
+
+/**
+ * Override to coalesce repeated changes of same property of same source in active undo set: The earlier change is
+ * replaced in undo set with a new change from its old value to the new value (so undo and redo see plain changes).
+ */
+public void addPropChange(PropChange anEvent)
+{
+    // If disabled (like during undo/redo), just return (super would drop change too)
+    if(!isEnabled()) return;
+    
+    // If active undo set changed, clear merged changes
+    UndoSet uset = getActiveUndoSet();
+    if(uset!=_mergedSet) { _merged.clear(); _mergedSet = uset; }
+    
+    // If indexed change (child add/remove), just add
+    if(anEvent.getIndex()>=0) { super.addPropChange(anEvent); return; }
+    
+    // If change for source and property already in undo set, replace it with change from its old value to new value
+    Object src = anEvent.getSource(); String pname = anEvent.getPropertyName();
+    List <PropChange> changes = uset.getChanges();
+    Map <String,Integer> srcChanges = _merged.get(src);
+    Integer index = srcChanges!=null? srcChanges.get(pname) : null;
+    if(index!=null && index<changes.size()) { PropChange old = changes.get(index);
+        if(old.getSource()==src && pname.equals(old.getPropertyName())) {
+            changes.set(index, new PropChange(src, pname, old.getOldValue(), anEvent.getNewValue())); return; }
+    }
+    
+    // Otherwise add change and if it was added to undo set, remember its index
+    int count = changes.size();
+    super.addPropChange(anEvent);
+    if(changes.size()==count+1 && changes.get(count)==anEvent) {
+        if(srcChanges==null) _merged.put(src, srcChanges = new HashMap());
+        srcChanges.put(pname, count);
+    }
+}
+
+/**
+ * Override to add saved undo set to history and trim history.
+ */
+public void saveChanges()
+{
+    // Get active undo set and do normal version
+    UndoSet uset = getActiveUndoSet();
+    super.saveChanges();
+    _merged.clear(); _mergedSet = null;
+    
+    // If undo set was saved, add to history and trim
+    if(getUndoSetLast()==uset && (_history.isEmpty() || _history.getLast().undoSet!=uset)) {
+        Entry entry = new Entry(uset, getByteCount(uset));
+        _history.add(entry); _historyBytes += entry.bytes;
+        trimHistory();
+    }
+}
+
+/**
+ * Override to stop at evicted undo set and remove undone set from history.
+ */
+public UndoSet undo()
+{
+    if(getUndoSetLast()==null) return null;
+    UndoSet uset = super.undo();
+    if(!_history.isEmpty() && _history.getLast().undoSet==uset) _historyBytes -= _history.removeLast().bytes;
+    return uset;
+}
+
+/**
+ * Override to add redone set back to history.
+ */
+public UndoSet redo()
+{
+    UndoSet uset = super.redo();
+    if(uset!=null) { Entry entry = new Entry(uset, getByteCount(uset));
+        _history.add(entry); _historyBytes += entry.bytes; trimHistory(); }
+    return uset;
+}
+
+/**
+ * Override to clear history.
+ */
+public void reset()
+{
+    super.reset();
+    _merged.clear(); _mergedSet = null;
+    _history.clear(); _historyBytes = 0; _evictedLast = null;
+}
+
+/**
+ * Evicts oldest undo sets while history is over max count or max bytes (always keeps last undo set).
+ */
+void trimHistory()
+{
+    while(_history.size()>1 && (_history.size()>_maxUndoCount || _historyBytes>_maxUndoBytes)) {
+        Entry entry = _history.removeFirst(); _historyBytes -= entry.bytes;
+        entry.undoSet.getChanges().clear();
+        _evictedLast = entry.undoSet;
+    }
+}
+
+/**
+ * Returns the estimated bytes of given undo set.
+ */
+static long getByteCount(UndoSet anUndoSet)
+{
+    long bytes = 64;
+    for(PropChange pc : anUndoSet.getChanges())
+        bytes += 48 + getByteCount(pc.getOldValue()) + getByteCount(pc.getNewValue());
+    return bytes;
+}
+
+/**
+ * Returns the estimated bytes of given change value (images and strings by size, other values as references).
+ */
+static long getByteCount(Object aValue)
+{
+    if(aValue instanceof Image) { Image img = (Image)aValue; return (long)img.getPixWidth()*img.getPixHeight()*4; }
+    if(aValue instanceof String) return 40 + ((String)aValue).length()*2;
+    return 16;
+}
+
+/**
+ * An entry for an undo set in history.
+ */
+static class Entry {
+    
+    // The undo set and its estimated bytes
+    UndoSet  undoSet;
+    long     bytes;
+    
+    /** Creates an Entry. */
+    Entry(UndoSet anUndoSet, long theBytes)  { undoSet = anUndoSet; bytes = theBytes; }
+}
+
+}
@@ -27,30 +27,32 @@ public static void groupViews(Editor anEditor, List <? extends View> theViews, P
     // If there are less than 2 selected shapes play a beep (the user really should know better)
     if(theViews.size()==0) { anEditor.beep(); return; }
     
-    // Set undo title
-    anEditor.undoerSetUndoTitle("Group");
-
-    // Get copy of shapes, sorted by their original index in parent
-    List <? extends View> shapes = theViews; //Sort.sortedList(theShapes, "indexInParent");
-    
-    // Get parent
-    ParentView parent = shapes.get(0).getParent();
-    
-    // If no group shape, create one
-    if(aGroupView==null) {
-        aGroupView = new SpringView();
-        aGroupView.setBounds(ViewUtils.getBoundsOfViews(parent, shapes));
+    // Begin transaction with undo title (changes are batched for undo, repaint and reset until commit)
+    anEditor.beginTransaction("Group");
+    try {
+        // Get copy of shapes, sorted by their original index in parent
+        List <? extends View> shapes = theViews; //Sort.sortedList(theShapes, "indexInParent");
+        
+        // Get parent
+        ParentView parent = shapes.get(0).getParent();
+        
+        // If no group shape, create one
+        if(aGroupView==null) {
+            aGroupView = new SpringView();
+            aGroupView.setBounds(ViewUtils.getBoundsOfViews(parent, shapes));
+        }
+        
+        // Add groupShape to the current parent (with no transform)
+        ViewUtils.addChild(parent, aGroupView);
+        
+        // Iterate over children and group to GroupShape
+        for(View child : shapes)
+            groupView(child, aGroupView);
+        
+        // Select group shape
+        anEditor.setSelectedView(aGroupView);
     }
-
-    // Add groupShape to the current parent (with no transform)
-    ViewUtils.addChild(parent, aGroupView);
-
-    // Iterate over children and group to GroupShape
-    for(View child : shapes)
-        groupView(child, aGroupView);
-    
-    // Select group shape
-    anEditor.setSelectedView(aGroupView);
+    finally { anEditor.commitTransaction(); }
 }
 
 /**
@@ -86,33 +88,35 @@ public static void ungroupViews(Editor anEditor)
     // Get currently super selected shape and create list to hold ungrouped shapes
     List <View> ungroupedShapes = new ArrayList();
     
-    // Register undo title for ungrouping
-    anEditor.undoerSetUndoTitle("Ungroup");
-
-    // See if any of the selected shapes can be ungrouped
-    for(View shape : anEditor.getSelectedViews()) {
+    // Begin transaction with undo title for ungrouping
+    anEditor.beginTransaction("Ungroup");
+    try {
+        // See if any of the selected shapes can be ungrouped
+        for(View shape : anEditor.getSelectedViews()) {
         
-        // If shape cann't be ungrouped, skip
-        if(!anEditor.getTool(shape).isUngroupable(shape)) continue;
-        ParentView groupShape = (ParentView)shape;
-        ParentView parent = groupShape.getParent();
-            
-        // Iterate over children and ungroup from GroupShape
-        for(View child : groupShape.getChildren().clone()) {
-            ungroupView(child);
-            ungroupedShapes.add(child);
+            // If shape cann't be ungrouped, skip
+            if(!anEditor.getTool(shape).isUngroupable(shape)) continue;
+            ParentView groupShape = (ParentView)shape;
+            ParentView parent = groupShape.getParent();
+        
+            // Iterate over children and ungroup from GroupShape
+            for(View child : groupShape.getChildren().clone()) {
+                ungroupView(child);
+                ungroupedShapes.add(child);
+            }
+        
+            // Remove groupShape from parent
+            ViewUtils.removeChild(parent, groupShape);
         }
-
-        // Remove groupShape from parent
-        ViewUtils.removeChild(parent, groupShape);
+        
+        // If were some ungroupedShapes, select them (set selected objects for undo/redo)
+        if(ungroupedShapes.size()>0)
+            anEditor.setSelectedViews(ungroupedShapes);
+        
+        // If no ungroupedShapes, beep at silly user
+        else anEditor.beep();
     }
-
-    // If were some ungroupedShapes, select them (set selected objects for undo/redo)
-    if(ungroupedShapes.size()>0)
-        anEditor.setSelectedViews(ungroupedShapes);
-
-    // If no ungroupedShapes, beep at silly user
-    else anEditor.beep();
+    finally { anEditor.commitTransaction(); }
 }
 
 /**
@@ -241,9 +245,12 @@ public static void makeColumnRight(Editor anEditor)
 public static void makeSameSize(Editor anEditor)
 {
     if(anEditor.getSelectedViewCount()==0) { anEditor.beep(); return; }
-    anEditor.undoerSetUndoTitle("Make Same Size");
-    Size size = anEditor.getSelectedView().getSize();
-    for(View view : anEditor.getSelectedViews()) view.setSize(size.width, size.height);
+    anEditor.beginTransaction("Make Same Size");
+    try {
+        Size size = anEditor.getSelectedView().getSize();
+        for(View view : anEditor.getSelectedViews()) view.setSize(size.width, size.height);
+    }
+    finally { anEditor.commitTransaction(); }
 }
 
 /**
@@ -341,13 +348,16 @@ public static void combinePaths(Editor anEditor)
     PathView combinedView = getCombinedPathsView(selViews);
     
     // Remove original children and replace with CombinedShape
-    anEditor.undoerSetUndoTitle("Add Paths");
-    ChildView parent = (ChildView)anEditor.getSuperSelectedParentView();
-    for(View shape : selViews) parent.removeChild(shape);
-    parent.addChild(combinedView);
-    
-    // Select CombinedShape
-    anEditor.setSelectedView(combinedView);
+    anEditor.beginTransaction("Add Paths");
+    try {
+        ChildView parent = (ChildView)anEditor.getSuperSelectedParentView();
+        for(View shape : selViews) parent.removeChild(shape);
+        parent.addChild(combinedView);
+        
+        // Select CombinedShape
+        anEditor.setSelectedView(combinedView);
+    }
+    finally { anEditor.commitTransaction(); }
 }
 
 /**
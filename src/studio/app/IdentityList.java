@@ -0,0 +1,88 @@
+package studio.app;
+import java.util.*;
+
+/**
+ * A List that keeps an identity hash index of its items, so contains() is a constant time identity check (instead of
+ * a scan). Used for editor selection lists.
+ */
+public class IdentityList <T> extends AbstractList <T> implements RandomAccess {
+    
+    // The items in order
+    List <T>                  _items = new ArrayList();
+    
+    // The number of times each item is in list (by identity)
+    Map <T,Integer>           _counts = new IdentityHashMap();
+
+/**
+ * Returns the number of items.
+ */
+public int size()  { return _items.size(); }
+
+/**
+ * Returns the item at given index.
+ */
+public T get(int anIndex)  { return _items.get(anIndex); }
+
+/**
+ * Returns whether list contains given item (by identity).
+ */
+public boolean contains(Object anObj)  { return _counts.containsKey(anObj); }
+
+/**
+ * Sets the item at given index.
+ */
+public T set(int anIndex, T anItem)
+{
+    T old = _items.set(anIndex, anItem);
+    removeCount(old); addCount(anItem);
+    return old;
+}
+
+/**
+ * Adds an item at given index.
+ */
+public void add(int anIndex, T anItem)
+{
+    _items.add(anIndex, anItem); addCount(anItem);
+    modCount++;
+}
+
+/**
+ * Removes the item at given index.
+ */
+public T remove(int anIndex)
+{
+    T old = _items.remove(anIndex); removeCount(old);
+    modCount++;
+    return old;
+}
+
+/**
+ * Removes all items.
+ */
+public void clear()
+{
+    _items.clear(); _counts.clear();
+    modCount++;
+}
+
+/**
+ * Increments the count for given item.
+ */
+private void addCount(T anItem)
+{
+    Integer count = _counts.get(anItem);
+    _counts.put(anItem, count!=null? count + 1 : 1);
+}
+
+/**
+ * Decrements the count for given item.
+ */
+private void removeCount(T anItem)
+{
+    Integer count = _counts.get(anItem);
+    if(count==null || count<=1) _counts.remove(anItem);
+    else _counts.put(anItem, count - 1);
+}
+
+}
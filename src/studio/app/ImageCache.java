@@ -0,0 +1,113 @@
+package studio.app;
+import java.util.*;
+import java.util.function.Supplier;
+import snap.gfx.Image;
+
+/**
+ * A memory-bounded cache of images by key (such as source path + layer), shared so that puppets from the same
+ * source share pixels. Least recently used images are evicted when the total image bytes exceed the max bytes.
+ */
+public class ImageCache {
+    
+    // The images by key (in access order, for LRU eviction)
+    LinkedHashMap <String,Image>  _images = new LinkedHashMap(64, .75f, true);
+    
+    // The total bytes of cached images
+    long                          _bytes;
+    
+    // The max bytes of cached images
+    long                          _maxBytes = 256L*1024*1024;
+    
+    // The shared cache
+    static ImageCache             _shared = new ImageCache();
+
+/**
+ * Returns the shared image cache.
+ */
+public static ImageCache getShared()  { return _shared; }
+
+/**
+ * Returns the max bytes of cached images.
+ */
+public long getMaxBytes()  { return _maxBytes; }
+
+/**
+ * Sets the max bytes of cached images.
+ */
+public synchronized void setMaxBytes(long aValue)  { _maxBytes = aValue; trim(); }
+
+/**
+ * Returns the total bytes of cached images.
+ */
+public synchronized long getBytes()  { return _bytes; }
+
+/**
+ * Returns the number of cached images.
+ */
+public synchronized int getCount()  { return _images.size(); }
+
+/**
+ * Returns the image for given key (or null if not cached).
+ */
+public synchronized Image getImage(String aKey)  { return _images.get(aKey); }
+
+/**
+ * Returns the image for given key, loading it with given loader and adding it if not cached.
+ * Loading is done outside of lock, so images can be loaded in parallel.
+ */
+public Image getImage(String aKey, Supplier <Image> aLoader)
+{
+    // If cached, just return
+    Image img = getImage(aKey); if(img!=null) return img;
+    
+    // Load image and add (if another thread added it first, use that one)
+    img = aLoader.get(); if(img==null) return null;
+    synchronized(this) {
+        Image img2 = _images.get(aKey); if(img2!=null) return img2;
+        putImage(aKey, img);
+    }
+    return img;
+}
+
+/**
+ * Adds an image for given key.
+ */
+public synchronized void putImage(String aKey, Image anImage)
+{
+    Image old = _images.put(aKey, anImage);
+    if(old!=null) _bytes -= getByteCount(old);
+    _bytes += getByteCount(anImage);
+    trim();
+}
+
+/**
+ * Removes the image for given key.
+ */
+public synchronized void removeImage(String aKey)
+{
+    Image old = _images.remove(aKey);
+    if(old!=null) _bytes -= getByteCount(old);
+}
+
+/**
+ * Removes all images.
+ */
+public synchronized void clear()  { _images.clear(); _bytes = 0; }
+
+/**
+ * Removes least recently used images until total bytes are within max bytes.
+ */
+void trim()
+{
+    for(Iterator <Image> iter=_images.values().iterator(); iter.hasNext() && _bytes>_maxBytes; ) {
+        Image img = iter.next(); iter.remove();
+        _bytes -= getByteCount(img);
+    }
+}
+
+/**
+ * Returns the bytes of pixel data for given image (ARGB).
+ */
+static long getByteCount(Image anImage)  { return (long)anImage.getPixWidth()*anImage.getPixHeight()*4; }
+
+}
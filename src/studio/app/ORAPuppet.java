@@ -8,6 +8,9 @@ import studio.app.ORAReader.*;
  */
 public class ORAPuppet extends Puppet {
 
+    // The reader (with name index of layers)
+    ORAReader  _reader;
+    
     // The stack of layers
     Stack      _stack;
     
@@ -31,12 +34,12 @@ public ORAPuppet(String aSource)
 public void setSource(String aPath)
 {
     super.setSource(aPath);
-    ORAReader rdr = new ORAReader();
+    ORAReader rdr = _reader = new ORAReader(); rdr.setPrefetch(true);
     
     // Get stack, body stack and joint stack
     _stack = rdr.readFile(aPath);
-    _bodyStack = (Stack)getLayer("RL_Image");
-    _jointStack = (Stack)getLayer("RL_Bone_Human");
+    _bodyStack = (Stack)getLayer(_stack, "RL_Image");
+    _jointStack = (Stack)getLayer(_stack, "RL_Bone_Human");
 }
 
 /**
@@ -129,23 +132,19 @@ String getLayerNameForPuppetName(String aName)
 }
 
 /**
- * Returns the layer for given name.
+ * Returns the layer for given name (from reader name index).
  */
-public Layer getLayer(String aName)  { return getLayer(_stack, aName); }
+public Layer getLayer(String aName)  { return _reader.getLayer(aName); }
 
 /**
- * Returns the layer for given name.
+ * Returns the layer for given name in given stack: The direct child with name, if there is one (from reader path
+ * index, so a layer with same name nested deeper or in another stack isn't picked), otherwise first descendant.
  */
-Layer getLayer(Layer aLayer, String aName)
+public Layer getLayer(Stack aStack, String aName)
 {
-    if(aLayer.name!=null && aLayer.name.equals(aName))
-        return aLayer;
-    if(aLayer instanceof Stack) { Stack stack = (Stack)aLayer;
-        for(Layer l : stack.entries)
-            if(getLayer(l, aName)!=null)
-                return getLayer(l, aName);
-    }
-    return null;
+    if(aStack==null) return null;
+    Layer layer = _reader.getLayerForPath(aStack.getPath() + '/' + aName);
+    return layer!=null? layer : aStack.getLayer(aName);
 }
 
 /**
@@ -153,14 +152,14 @@ Layer getLayer(Layer aLayer, String aName)
  */
 public Layer getLayerForPartName(String aName)
 {
-    if(aName.equals("RL_TalkingHead")) return _stack.getLayer(aName);
-    return _bodyStack.getLayer(aName);
+    if(aName.equals("RL_TalkingHead")) return getLayer(_stack, aName);
+    return getLayer(_bodyStack, aName);
 }
 
 /**
  * Returns the layer for given joint name.
  */
-public Layer getLayerForJointName(String aName)  { return _jointStack.getLayer(aName); }
+public Layer getLayerForJointName(String aName)  { return getLayer(_jointStack, aName); }
 
 /**
  * Splits a part around joint - for when given arm/leg as one piece instead of top/bottom.
@@ -176,11 +175,8 @@ Part splitPartAroundJoint(String aPartName, String aJointName, String aName2)
     Rect pbnds = getSplitBoundsForView(part, joint, isTop);
     Rect ibnds = new Rect(pbnds.x - part.x, pbnds.y - part.y, pbnds.width, pbnds.height);
     
-    Image img = part.getImage();
-    Image img1 = img.getSubimage(ibnds.x, ibnds.y, ibnds.width, ibnds.height);
-    
-    // Create/add new parts
-    Part np = new ORAPart(aName2, null); np.x = pbnds.x; np.y = pbnds.y; np._img = img1;
+    // Create/add new part for sub-rect of part layer image (image is shared in ImageCache)
+    Part np = new ORAPart(aName2, ((ORAPart)part)._lyr, ibnds); np.x = pbnds.x; np.y = pbnds.y;
     return np;
 }
 
@@ -232,15 +228,35 @@ private class ORAPart extends Puppet.Part {
     
     Layer  _lyr;
     
+    // The sub-rect of layer image, if part is split from a layer
+    Rect   _subRect;
+    
     /** Creates an ORAPart for given layer. */
-    public ORAPart(String aName, Layer aLayer)
+    public ORAPart(String aName, Layer aLayer)  { this(aName, aLayer, null); }
+    
+    /** Creates an ORAPart for given layer and sub-rect of layer image. */
+    public ORAPart(String aName, Layer aLayer, Rect aRect)
     {
-        name = aName; _lyr = aLayer; if(aLayer==null) return;
+        name = aName; _lyr = aLayer; _subRect = aRect; if(aLayer==null) return;
         aLayer.getImage(); x = aLayer.x; y = aLayer.y;
     }
+    
+    /** Override to get image from shared ImageCache (instead of holding it). */
+    public Image getImage()  { return _lyr!=null? getImageImpl() : super.getImage(); }
         
     /** Returns the image. */
-    protected Image getImageImpl()  { return _lyr.getImage(); }
+    protected Image getImageImpl()
+    {
+        // If not split, just return layer image
+        if(_subRect==null) return _lyr.getImage();
+        
+        // Return sub-image from cache (key is layer key + sub-rect)
+        Rect r = _subRect;
+        String key = _lyr.getCacheKey() + '@' + r.x + ',' + r.y + ',' + r.width + ',' + r.height;
+        return ImageCache.getShared().getImage(key, () -> {
+            Image img = _lyr.getImage(); if(img==null) return null;
+            return img.getSubimage(r.x, r.y, r.width, r.height); });
+    }
 }
 
 }
\ No newline at end of file
@@ -1,5 +1,10 @@
 package studio.app;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.*;
+import snap.geom.Rect;
 import snap.gfx.*;
 import snap.util.XMLElement;
 import snap.web.WebURL;
@@ -12,32 +17,167 @@ public class ORAReader {
     // The source path
     String      _srcPath;
     
+    // The archive path, if source is an .ora archive (layer images are read from it on demand)
+    String      _zipPath;
+    
+    // The zip file, open only while reading file (later layer image reads open archive briefly)
+    volatile ZipFile  _zip;
+    
+    // The layers by name (in tree order, a name can have more than one layer) and by path-qualified name
+    Map <String,List<Layer>>  _names = new HashMap();
+    Map <String,Layer>        _paths = new HashMap();
+    
+    // Whether to decode visible layer images in parallel when reading file
+    boolean     _prefetch;
+    
+    // The max number of threads used to decode layer images in prefetch
+    int         _parallelism = Runtime.getRuntime().availableProcessors();
+    
     int _indent = -1;
 
 /**
- * Read file.
+ * Returns whether to decode visible layer images in parallel when reading file.
+ */
+public boolean isPrefetch()  { return _prefetch; }
+
+/**
+ * Sets whether to decode visible layer images in parallel when reading file.
+ */
+public void setPrefetch(boolean aValue)  { _prefetch = aValue; }
+
+/**
+ * Returns the max number of threads used to decode layer images in prefetch.
+ */
+public int getParallelism()  { return _parallelism; }
+
+/**
+ * Sets the max number of threads used to decode layer images in prefetch.
+ */
+public void setParallelism(int aValue)  { _parallelism = Math.max(aValue, 1); }
+
+/**
+ * Read file (an exploded ORA directory or an .ora archive).
  */
 public Stack readFile(String aPath)
 {
     _srcPath = aPath; //"/tmp/CTLady";
-        
-    WebURL url = WebURL.getURL(_srcPath + "/stack.xml");
-
-    XMLElement imgXML = XMLElement.getElement(url);
+    
+    // Get image XML from archive or directory
+    XMLElement imgXML;
+    if(isArchive(_srcPath)) {
+        try { _zipPath = _srcPath; _zip = new ZipFile(_srcPath); }
+        catch(IOException e) { System.err.println("ORAReader.readFile: " + e); return null; }
+        byte bytes[] = readEntry(_zip, "stack.xml");
+        if(bytes==null) { System.err.println("ORAReader.readFile: No stack.xml in " + _srcPath); close(); return null; }
+        imgXML = XMLElement.getElement(bytes);
+    }
+    else {
+        WebURL url = WebURL.getURL(_srcPath + "/stack.xml");
+        imgXML = XMLElement.getElement(url);
+    }
     XMLElement stackXML = imgXML.getElement(0);
     
-    Stack stack = readStack(stackXML);
+    // Read stack and if prefetch, decode layer images (then close zip file, so archive isn't held open)
+    Stack stack;
+    try {
+        stack = readStack(stackXML, null);
+        if(_prefetch && stack!=null)
+            prefetchImages(stack);
+    }
+    finally { close(); }
     
     // Return view
     return stack;
 }
 
-Stack readStack(XMLElement aXML)
+/**
+ * Closes the zip file, if open (layer images read later open archive briefly).
+ */
+public void close()
+{
+    ZipFile zip = _zip; _zip = null; if(zip==null) return;
+    try { zip.close(); }
+    catch(IOException e) { System.err.println("ORAReader.close: " + e); }
+}
+
+/**
+ * Decodes the images of all visible layers in given stack on a bounded pool of worker threads and waits for them.
+ */
+public void prefetchImages(Stack aStack)
+{
+    // Get visible layers (just return if none)
+    List <Layer> layers = new ArrayList(); addVisibleLayers(aStack, layers);
+    if(layers.isEmpty()) return;
+    
+    // Create pool of daemon threads
+    int count = Math.min(_parallelism, layers.size());
+    ExecutorService pool = Executors.newFixedThreadPool(count, r -> {
+        Thread thread = new Thread(r, "ORAReader"); thread.setDaemon(true); return thread; });
+    
+    // Decode layer images in pool and wait for them all
+    try {
+        List <Future> futures = new ArrayList(layers.size());
+        for(Layer layer : layers) futures.add(pool.submit(() -> layer.loadImage()));
+        for(Future future : futures) future.get();
+    }
+    catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+    catch(ExecutionException e) { System.err.println("ORAReader.prefetchImages: " + e.getCause()); }
+    finally { pool.shutdown(); }
+}
+
+/**
+ * Adds the visible image layers (not stacks) in given stack to given list.
+ */
+void addVisibleLayers(Stack aStack, List <Layer> theLayers)
+{
+    for(Layer entry : aStack.entries) {
+        if(!entry.visible) continue;
+        if(entry instanceof Stack) addVisibleLayers((Stack)entry, theLayers);
+        else if(entry.src!=null) theLayers.add(entry);
+    }
+}
+
+/**
+ * Returns the first layer (in tree order) with given name.
+ */
+public Layer getLayer(String aName)
+{
+    List <Layer> layers = _names.get(aName);
+    return layers!=null? layers.get(0) : null;
+}
+
+/**
+ * Returns the layers with given name (in tree order).
+ */
+public List <Layer> getLayers(String aName)
+{
+    List <Layer> layers = _names.get(aName);
+    return layers!=null? layers : Collections.EMPTY_LIST;
+}
+
+/**
+ * Returns the layer for given path-qualified name (stack names and layer name separated by '/', e.g. "RL_Image/RArm").
+ */
+public Layer getLayerForPath(String aPath)  { return _paths.get(aPath); }
+
+/**
+ * Adds given layer to name and path indexes.
+ */
+void addToIndex(Layer aLayer)
+{
+    List <Layer> layers = _names.get(aLayer.name);
+    if(layers==null) _names.put(aLayer.name, layers = new ArrayList(2));
+    layers.add(aLayer);
+    _paths.putIfAbsent(aLayer.getPath(), aLayer);
+}
+
+Stack readStack(XMLElement aXML, Stack aParent)
 {
     String name = aXML.getAttributeValue("name");
     if(name!=null && name.equals("HeadBone")) return null;
     
-    Stack stack = new Stack(name);
+    Stack stack = new Stack(name); stack.stack = aParent; stack._index = _names;
+    addToIndex(stack);
     String visibility = aXML.getAttributeValue("visibility");
     stack.visible = visibility!=null && visibility.equals("visible");
     
@@ -48,9 +188,9 @@ Stack readStack(XMLElement aXML)
         String type = xml.getName();
         Layer entry = null;
         if(type.equals("stack"))
-            entry = readStack(xml);
+            entry = readStack(xml, stack);
         else if(type.equals("layer"))
-             entry = readLayer(xml);
+             entry = readLayer(xml, stack);
         else System.out.println("Unknown type: " + type);
         if(entry!=null) {
             stack.entries.add(entry);
@@ -62,12 +202,12 @@ Stack readStack(XMLElement aXML)
     return stack;
 }
 
-Layer readLayer(XMLElement aXML)
+Layer readLayer(XMLElement aXML, Stack aParent)
 {
     String name = aXML.getAttributeValue("name");
     if(name==null || name.startsWith("Mask")) return null;
     
-    String src = _srcPath + '/' + aXML.getAttributeValue("src");
+    String src = aXML.getAttributeValue("src"); if(_zipPath==null) src = _srcPath + '/' + src;
     String visibility = aXML.getAttributeValue("visibility");
     boolean isVis = visibility.equals("visible");
     if(!isVis) return null;
@@ -75,12 +215,46 @@ Layer readLayer(XMLElement aXML)
     // Get X/Y
     double x = aXML.getAttributeDoubleValue("x");
     double y = aXML.getAttributeDoubleValue("y");
-    Layer layer = new Layer(name, src, isVis, x, y);
+    Layer layer = new Layer(name, src, isVis, x, y); layer._reader = _zipPath!=null? this : null; layer.stack = aParent;
+    addToIndex(layer);
     
     //for(int i=0;i<_indent;i++) System.out.print("    "); System.out.println(layer);
     return layer;
 }
 
+/**
+ * Returns whether given path is an .ora archive (as opposed to an exploded ORA directory).
+ */
+public static boolean isArchive(String aPath)
+{
+    return aPath.toLowerCase().endsWith(".ora") && new File(aPath).isFile();
+}
+
+/**
+ * Returns the bytes for given archive entry: From zip file if open, otherwise from archive opened just for read.
+ */
+byte[] readEntry(String aName)
+{
+    ZipFile zip = _zip; if(zip!=null) return readEntry(zip, aName);
+    try (ZipFile zip2 = new ZipFile(_zipPath)) { return readEntry(zip2, aName); }
+    catch(IOException e) { System.err.println("ORAReader.readEntry: " + e); return null; }
+}
+
+/**
+ * Returns the bytes for given entry in given zip file (or null if not found).
+ */
+static byte[] readEntry(ZipFile aZip, String aName)
+{
+    ZipEntry entry = aZip.getEntry(aName); if(entry==null) return null;
+    try (InputStream istream = aZip.getInputStream(entry)) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max((int)entry.getSize(), 1024));
+        byte buf[] = new byte[8192];
+        for(int len=istream.read(buf); len>0; len=istream.read(buf)) bytes.write(buf, 0, len);
+        return bytes.toByteArray();
+    }
+    catch(IOException e) { System.err.println("ORAReader.readEntry: " + e); return null; }
+}
+
 /**
  * A layer entry.
  */
@@ -98,7 +272,11 @@ public static class Layer {
     
     public Object view;
     
-    Image  _img;
+    // The image pixel size, once image is read (so layer can be invalidated without reading image again)
+    volatile int    _pw = -1, _ph;
+    
+    // The reader to read image from, if read from .ora archive (src is entry name)
+    ORAReader  _reader;
     
     /** Creates an ORA Layer. */
     public Layer(String aName)  { name = strip(aName); }
@@ -109,11 +287,73 @@ public static class Layer {
         name = strip(aName); src = aSrc; visible = isVis; x = aX; y = aY;
     }
     
-    /** Returns the image. */
+    /** Returns the image (from shared ImageCache). */
     public Image getImage()
     {
-        if(_img!=null) return _img;
-        return _img = Image.get(src);
+        if(src==null) return null;
+        Image img = ImageCache.getShared().getImage(getCacheKey(), () -> readImage());
+        if(img!=null && _pw<0) { _ph = img.getPixHeight(); _pw = img.getPixWidth(); }
+        return img;
+    }
+    
+    /** Reads the image from source and forces decode of its pixels. */
+    Image readImage()
+    {
+        Image img;
+        if(_reader!=null) { byte bytes[] = _reader.readEntry(src); img = bytes!=null? Image.get(bytes) : null; }
+        else img = Image.get(src);
+        if(img!=null) img.getPixWidth();
+        return img;
+    }
+    
+    /** Loads the image into shared ImageCache (for prefetch). */
+    void loadImage()  { getImage(); }
+    
+    /** Returns the path-qualified name (parent stack names and layer name separated by '/'). */
+    public String getPath()  { return stack!=null? stack.getPath() + '/' + name : name; }
+    
+    /** Returns whether layer is a descendant of given stack. */
+    public boolean isDescendantOf(Stack aStack)
+    {
+        for(Stack s=stack; s!=null; s=s.stack) if(s==aStack) return true;
+        return false;
+    }
+    
+    /** Returns the key for layer image in shared ImageCache (source path + layer source). */
+    public String getCacheKey()  { return _reader!=null? _reader._zipPath + '!' + src : src; }
+    
+    /** Returns the layer bounds in canvas coords (null if no image). */
+    public Rect getBounds()
+    {
+        Image img = getImage(); if(img==null) return null;
+        return new Rect(x, y, img.getPixWidth(), img.getPixHeight());
+    }
+    
+    /** Sets whether layer is visible (invalidates affected tiles of parent stacks). */
+    public void setVisible(boolean aValue)
+    {
+        if(aValue==visible) return;
+        invalidate(); visible = aValue; invalidate();
+    }
+    
+    /** Sets the layer X/Y in canvas coords (invalidates affected tiles of parent stacks). */
+    public void setXY(double aX, double aY)
+    {
+        if(aX==x && aY==y) return;
+        invalidate(); x = aX; y = aY; invalidate();
+    }
+    
+    /** Returns the layer bounds in canvas coords if image was read (null if not known). */
+    Rect getKnownBounds()  { return _pw>=0? new Rect(x, y, _pw, _ph) : null; }
+    
+    /** Invalidates the tiles of parent stacks covered by layer (by known bounds without reading image, else all). */
+    void invalidate()  { if(stack!=null) stack.invalidateRect(getKnownBounds()); }
+    
+    /** Paints the part of layer in given rect (canvas coords), with painter origin at rect origin. */
+    void paintRect(Painter aPntr, Rect aRect)
+    {
+        Image img = getImage();
+        if(img!=null) aPntr.drawImage(img, x - aRect.x, y - aRect.y);
     }
     
     public String toString()
@@ -135,49 +375,170 @@ public static class Stack extends Layer {
     
     public List <Layer> entries = new ArrayList();
     
+    // The composited tiles by tile key (null for tiles no visible entries touch) and the bounds of visible entries
+    Map <Long,Image>  _tiles = new HashMap();
+    Rect              _bounds;
+    
+    // The key of composited image in shared ImageCache (new key when stack is invalidated)
+    volatile String   _imgKey = nextImageKey();
+    
+    // The counter for composited image keys
+    static AtomicLong _imgKeys = new AtomicLong();
+    
+    // The reader name index (layers by name in tree order), if read by ORAReader
+    Map <String,List<Layer>>  _index;
+    
+    // The tile size in pixels
+    public static final int TILE_SIZE = 256;
+    
     /** Creates an ORA Stack. */
     public Stack(String aName)  { super(aName); }
     
-    /** Returns the image. */
+    /** Returns the image (composited from retained tiles, held by shared ImageCache so it can be evicted). */
     public Image getImage()
+    {
+        // Get bounds of visible entries
+        Rect bnds = getBounds();
+        if(bnds==null) { System.out.println("Stack.getImage: No image for layer: " + name); return null; }
+        
+        // Return image from cache (or composite from tiles)
+        return ImageCache.getShared().getImage(_imgKey, () -> getImage(bnds));
+    }
+    
+    /** Override to return key of composited image in shared ImageCache (changes when stack is invalidated). */
+    public String getCacheKey()  { return _imgKey; }
+    
+    /** Returns a new key for composited image. */
+    static String nextImageKey()  { return "ORAStack#" + _imgKeys.incrementAndGet(); }
+    
+    /** Returns an image for given rect (canvas coords) composited from tiles. */
+    public Image getImage(Rect aRect)
+    {
+        int px = (int)Math.ceil(aRect.width), py = (int)Math.ceil(aRect.height); if(px<1 || py<1) return null;
+        Image img = Image.get(px, py, true);
+        paintRect(img.getPainter(), aRect);
+        return img;
+    }
+    
+    /** Returns the bounds of visible entries in canvas coords (null if none) and sets stack X/Y to its origin. */
+    public Rect getBounds()
     {
         // If already set, just return
-        if(_img!=null) return _img;
+        if(_bounds!=null) return _bounds.width>0? _bounds : null;
         
-        // Iterate over entries and find x, y, maxX, maxY
-        double mx = 0, my = 0;
+        // Iterate over visible entries and find x, y, maxX, maxY
+        double x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, mx = -Float.MAX_VALUE, my = -Float.MAX_VALUE;
         for(Layer entry : entries) {
             if(!entry.visible) continue;
-            Image img = entry.getImage(); if(img==null) continue;
-            x = Math.min(x, entry.x);
-            y = Math.min(y, entry.y);
-            mx = Math.max(mx, entry.x + img.getPixWidth());
-            my = Math.max(my, entry.y + img.getPixHeight());
+            Rect ebnds = entry.getBounds(); if(ebnds==null) continue;
+            x0 = Math.min(x0, ebnds.x); y0 = Math.min(y0, ebnds.y);
+            mx = Math.max(mx, ebnds.getMaxX()); my = Math.max(my, ebnds.getMaxY());
         }
         
-        // Get pixels wide/tall
-        int px = (int)Math.ceil(mx - x);
-        int py = (int)Math.ceil(my - y);
-        if(px<1 || py<1 || px>5000 || py>5000) {
-            System.out.println("Stack.getImage: No image for layer: " + name); return null; }
+        // If no visible entries, set empty bounds and return null
+        if(x0>mx || y0>my) { _bounds = new Rect(); return null; }
         
-        // Create image and render layer images in it
-        Image img = Image.get(px, py, true);
-        Painter pntr = img.getPainter();
-        for(int i=entries.size()-1; i>=0; i--) { Layer entry = entries.get(i);
+        // Set bounds and X/Y
+        _bounds = new Rect(x0, y0, mx - x0, my - y0); x = x0; y = y0;
+        return _bounds.width>0? _bounds : null;
+    }
+    
+    /** Sets the stack X/Y by moving entries. */
+    public void setXY(double aX, double aY)
+    {
+        Rect bnds = getBounds(); if(bnds==null) return;
+        double dx = aX - bnds.x, dy = aY - bnds.y; if(dx==0 && dy==0) return;
+        for(Layer entry : entries) { Rect ebnds = entry.getBounds(); if(ebnds==null) continue;
+            entry.setXY(ebnds.x + dx, ebnds.y + dy); }
+    }
+    
+    /** Paints the part of stack in given rect (canvas coords) from tiles, with painter origin at rect origin. */
+    void paintRect(Painter aPntr, Rect aRect)
+    {
+        // Get tile range for intersection of rect and bounds
+        Rect bnds = getBounds(); if(bnds==null) return;
+        double x0 = Math.max(aRect.x, bnds.x), y0 = Math.max(aRect.y, bnds.y);
+        double x1 = Math.min(aRect.getMaxX(), bnds.getMaxX()), y1 = Math.min(aRect.getMaxY(), bnds.getMaxY());
+        if(x0>=x1 || y0>=y1) return;
+        int c0 = (int)Math.floor(x0/TILE_SIZE), r0 = (int)Math.floor(y0/TILE_SIZE);
+        int c1 = (int)Math.ceil(x1/TILE_SIZE) - 1, r1 = (int)Math.ceil(y1/TILE_SIZE) - 1;
+        
+        // Draw tiles (skipping empty ones)
+        for(int c=c0; c<=c1; c++) for(int r=r0; r<=r1; r++) {
+            Image tile = getTile(c, r);
+            if(tile!=null) aPntr.drawImage(tile, c*TILE_SIZE - aRect.x, r*TILE_SIZE - aRect.y);
+        }
+    }
+    
+    /** Returns the tile at given column/row, compositing it if needed (null if no visible entries touch it). */
+    Image getTile(int aCol, int aRow)
+    {
+        // If already composited (or known empty), just return
+        Long key = ((long)aCol<<32) | (aRow & 0xffffffffL);
+        if(_tiles.containsKey(key)) return _tiles.get(key);
+        
+        // Get entries that touch tile (if none, cache as empty)
+        Rect trect = new Rect(aCol*TILE_SIZE, aRow*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        List <Layer> hits = new ArrayList();
+        for(Layer entry : entries) {
             if(!entry.visible) continue;
-            Image im = entry.getImage(); if(im==null) continue;
-            pntr.drawImage(im, entry.x - x, entry.y - y);
+            Rect ebnds = entry.getBounds();
+            if(ebnds!=null && intersects(ebnds, trect)) hits.add(entry);
         }
+        if(hits.isEmpty()) { _tiles.put(key, null); return null; }
         
-        // Return image
-        return _img = img;
+        // Create tile and render entries in it (in reverse order, so first entry is on top)
+        Image tile = Image.get(TILE_SIZE, TILE_SIZE, true);
+        Painter pntr = tile.getPainter();
+        for(int i=hits.size()-1; i>=0; i--)
+            hits.get(i).paintRect(pntr, trect);
+        _tiles.put(key, tile);
+        return tile;
     }
     
-    /** Returns the layer with given name. */
+    /** Returns the bounds if already computed (null if not known). */
+    Rect getKnownBounds()  { return _bounds!=null && _bounds.width>0? _bounds : null; }
+    
+    /** Invalidates the tiles that touch given rect (canvas coords, null for all) here and in parent stacks. */
+    void invalidateRect(Rect aRect)
+    {
+        // Clear composited image (removed from cache, with new key so it can't be added back stale) and bounds
+        String key = _imgKey; _imgKey = nextImageKey(); ImageCache.getShared().removeImage(key);
+        _bounds = null;
+        
+        // Remove tiles in rect (or all tiles if no rect)
+        if(aRect==null) _tiles.clear();
+        else {
+            int c0 = (int)Math.floor(aRect.x/TILE_SIZE), r0 = (int)Math.floor(aRect.y/TILE_SIZE);
+            int c1 = (int)Math.floor(aRect.getMaxX()/TILE_SIZE), r1 = (int)Math.floor(aRect.getMaxY()/TILE_SIZE);
+            for(int c=c0; c<=c1; c++) for(int r=r0; r<=r1; r++)
+                _tiles.remove(((long)c<<32) | (r & 0xffffffffL));
+        }
+        
+        // Forward to parent stack
+        if(stack!=null) stack.invalidateRect(aRect);
+    }
+    
+    /** Returns whether given rects intersect. */
+    static boolean intersects(Rect r1, Rect r2)
+    {
+        return r1.x<r2.getMaxX() && r2.x<r1.getMaxX() && r1.y<r2.getMaxY() && r2.y<r1.getMaxY();
+    }
+    
+    /** Returns the layer with given name (first in tree order). */
     public Layer getLayer(String aName)
     {
+        // If this stack, just return
         if(name.equals(aName)) return this;
+        
+        // If indexed, return first layer with name that is in this stack
+        if(_index!=null) {
+            List <Layer> layers = _index.get(aName); if(layers==null) return null;
+            for(Layer layer : layers) if(layer.isDescendantOf(this)) return layer;
+            return null;
+        }
+        
+        // Otherwise search entries
         for(Layer entry : entries) {
             if(entry.name.equals(aName))
                 return entry;
@@ -1,5 +1,8 @@
 package studio.app;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
 import org.jbox2d.collision.shapes.CircleShape;
 import org.jbox2d.collision.shapes.PolygonShape;
 import org.jbox2d.common.Vec2;
@@ -7,6 +10,7 @@ import org.jbox2d.dynamics.*;
 import org.jbox2d.dynamics.joints.*;
 import snap.geom.*;
 import snap.util.MathUtils;
+import snap.util.PropChangeListener;
 import snap.view.*;
 import snap.view.EventListener;
 
@@ -27,40 +31,136 @@ public class PhysicsRunner {
     // The Runner
     Runnable       _runner;
     
-    // Transforms
-    Transform _localToBox;
+    // The transform from View coords to Box coords (scale and translate), cached as primitives
+    double         _vtbScaleX, _vtbScaleY, _vtbTransX, _vtbTransY;
+    boolean        _vtbValid;
+    
+    // Scratch vectors for per-frame Box2D calls (Box2D copies values)
+    Vec2           _vec = new Vec2(), _vec2 = new Vec2();
     
     // Listener to handle drags
     EventListener  _dragFilter = e -> handleDrag(e);
     
+    // Listener to reset view to box transform when view size changes
+    PropChangeListener  _sizeLsnr = pc -> _vtbValid = false;
+    
     // Ground Body
     Body           _groundBody;
     
     // MouseJoint used for dragging
     MouseJoint     _dragJoint;
+    
+    // Whether world is stepped with fixed time steps from an accumulator (instead of once per timer fire)
+    boolean        _fixedStep;
+    
+    // The fixed step time in seconds, the max steps per frame and the timer frame interval in milliseconds
+    double         _stepTime = 1/60d;
+    int            _maxSteps = 5;
+    int            _frameInterval = 16;
+    
+    // The Box2D velocity and position iterations per step
+    int            _velIters = 20, _posIters = 20;
+    
+    // The unstepped time accumulated in fixed step mode (in seconds) and the last frame time (in nanos)
+    double         _accumTime;
+    long           _lastTime;
+    
+    // The bodies created by runner (a body's id is its index, also stored as body UserData)
+    List <Body>    _bodies = new ArrayList();
+    
+    // The body positions and angles before last step (by body id), used to interpolate views
+    float          _prevX[] = new float[0], _prevY[] = new float[0], _prevA[] = new float[0];
+    
+    // The body positions and angles last applied to views (by body id), to skip views whose body hasn't moved
+    float          _syncX[] = new float[0], _syncY[] = new float[0], _syncA[] = new float[0];
+    
+    // The min change in view points (or degrees) for a view to be updated from its body
+    double         _syncTolerance = .01;
+    
+    // The number of views updated from bodies in last frame
+    int            _syncCount;
+    
+    // Whether world is stepped on a simulation thread (opt-in)
+    boolean        _threaded;
+    
+    // The simulation thread
+    volatile Thread _simThread;
+    
+    // The queue of world changes from UI thread to be run on simulation thread before next step
+    Queue <Runnable> _simQueue = new ConcurrentLinkedQueue();
+    
+    // The body states being written by sim thread, the last published and those being read by UI thread
+    BodyStates     _simStates, _uiStates;
+    AtomicReference <BodyStates> _readyStates = new AtomicReference();
+    
+    // The kinematic body targets being written by UI thread, the last published and those being applied by sim thread
+    BodyTargets    _uiTargets, _simTargets;
+    AtomicReference <BodyTargets> _readyTargets = new AtomicReference();
+    
+    // The number of frames of body targets written by UI thread
+    long           _targetsCount;
+    
+    // The drag target published by UI thread for sim thread (float bits of x and y) or NO_TARGET
+    AtomicLong     _dragTarget = new AtomicLong(NO_TARGET);
+    
+    // Constant for no drag target (NaN float bits for x and y)
+    static final long NO_TARGET = -1;
+    
+    // The number of steps taken on simulation thread
+    long           _simStepCount;
+    
+    // The kinematic bodies given velocities by applied targets before current step and a scratch vector (sim thread)
+    List <Body>    _simMoved = new ArrayList();
+    Vec2           _simVec = new Vec2();
+    
+    // A shared cache of decomposed Box2D shapes by shape geometry key (LRU, Box2D clones shapes for each fixture)
+    static Map <String,org.jbox2d.collision.shapes.Shape[]> _shapeCache = new LinkedHashMap(64, .75f, true) {
+        protected boolean removeEldestEntry(Map.Entry anEntry)  { return size()>_shapeCacheMax; }};
+    
+    // The max number of entries in shape cache
+    static int     _shapeCacheMax = 256;
+    
+    // A spatial index of the body views, used to find joint bodies
+    ViewGrid       _bodyGrid;
+    
+    // The per-frame timings and world counts
+    PhysicsStats   _stats = new PhysicsStats();
+    
+    // The time and count of world steps on simulation thread since last frame (in nanos)
+    AtomicLong     _simStepNanos = new AtomicLong();
+    AtomicInteger  _simSteps = new AtomicInteger();
+    
+    // A view to repaint after each frame to show updated stats (e.g. an editor painting stats overlay)
+    View           _statsView;
 
 /**
  * Create new PhysicsRunner.
  */
 public PhysicsRunner(ParentView aView)
 {
-    // Set View
+    // Set View and listen for size changes to reset view to box transform
     _view = aView;
+    _view.addPropChangeListener(_sizeLsnr, View.Width_Prop, View.Height_Prop);
     
     // Create world
     _world = new World(new Vec2(0, 0));//-9.8f));
     
     // Add bodies for view children
-    List <View> joints = new ArrayList();
+    List <View> joints = new ArrayList(), bodyViews = new ArrayList();
     for(View child : _view.getChildren()) { ViewPhysics phys = child.getPhysics(true);
         if(phys.isJoint() || "joint".equals(child.getName())) joints.add(child);
         else { 
             phys.setDynamic(true);
             createBody(child);
             addDragger(child);
+            bodyViews.add(child);
         }
     }
     
+    // Create spatial index of body views for joints
+    View bviews[] = bodyViews.toArray(new View[0]);
+    _bodyGrid = new ViewGrid(_view, ViewGrid.getCellSize(bviews), bviews);
+    
     // Add joints
     for(View v : joints)
         createJoint(v);
@@ -83,7 +183,7 @@ public double getScreenPointsToWorldMeters(double aScale)  { return _scale; }
  * 
  * So if you want your 720 point tall window to be 10m, set scale to be 720/10d (the default).
  */
-public void setScreenPointsToWorldMeters(double aScale)  { _scale = aScale; }
+public void setScreenPointsToWorldMeters(double aScale)  { _scale = aScale; _vtbValid = false; }
 
 /**
  * Returns whether physics is running.
@@ -98,34 +198,547 @@ public void setRunning(boolean aValue)
     // If already set, just return
     if(aValue==isRunning()) return;
     
-    // Set timer to call timerFired 25 times a second
-    if(_runner==null)
-        ViewEnv.getEnv().runIntervals(_runner = () -> timerFired(), 40, 0, true, true);
+    // If starting, reset accumulator and body states
+    if(_runner==null) {
+        _accumTime = 0; _lastTime = 0;
+        saveBodyStates();
+    }
+    
+    // Set timer to call timerFired 25 times a second (or at frame interval, if fixed step or threaded)
+    if(_runner==null) {
+        if(_threaded) startSimThread();
+        ViewEnv.getEnv().runIntervals(_runner = () -> timerFired(), _fixedStep || _threaded? _frameInterval : 40, 0,
+            true, true);
+    }
     else {
-        ViewEnv.getEnv().stopIntervals(_runner); _runner = null; }
+        ViewEnv.getEnv().stopIntervals(_runner); _runner = null;
+        if(_threaded) stopSimThread();
+    }
+}
+
+/**
+ * Stops physics and removes listeners and drag filters added to view and children (runner can't be used after).
+ */
+public void dispose()
+{
+    setRunning(false);
+    _view.removePropChangeListener(_sizeLsnr, View.Width_Prop, View.Height_Prop);
+    for(View child : _view.getChildren())
+        child.removeEventFilter(_dragFilter, View.MousePress, View.MouseDrag, View.MouseRelease);
+}
+
+/**
+ * Returns whether world is stepped on a simulation thread.
+ */
+public boolean isThreaded()  { return _threaded; }
+
+/**
+ * Sets whether world is stepped on a simulation thread.
+ * 
+ * In this mode, the world is stepped with fixed time steps on a background thread, which publishes a snapshot of
+ * body positions/angles after each step that the UI thread applies to views in one pass at the frame interval.
+ * Kinematic body targets from views and drag targets are published to the simulation thread each frame (other world
+ * changes are queued) and applied before the next step.
+ */
+public void setThreaded(boolean aValue)
+{
+    // If already set, just return
+    if(aValue==_threaded) return;
+    
+    // Set value and restart timer if running
+    boolean running = isRunning(); setRunning(false);
+    _threaded = aValue;
+    setRunning(running);
 }
 
+/**
+ * Returns whether world is stepped with fixed time steps, independent of the timer frame rate.
+ */
+public boolean isFixedStep()  { return _fixedStep; }
+
+/**
+ * Sets whether world is stepped with fixed time steps, independent of the timer frame rate.
+ * 
+ * In this mode, timer fires at the frame interval and the world is stepped as many times as needed (up to max steps)
+ * to consume the elapsed time. Views are interpolated between the last two body states.
+ */
+public void setFixedStep(boolean aValue)
+{
+    // If already set, just return
+    if(aValue==_fixedStep) return;
+    
+    // Set value and restart timer if running
+    boolean running = isRunning(); setRunning(false);
+    _fixedStep = aValue;
+    setRunning(running);
+}
+
+/**
+ * Returns the fixed step time in seconds (default is 1/60).
+ */
+public double getStepTime()  { return _stepTime; }
+
+/**
+ * Sets the fixed step time in seconds.
+ */
+public void setStepTime(double aValue)  { _stepTime = aValue; }
+
+/**
+ * Returns the max number of world steps per frame in fixed step mode (default is 5).
+ */
+public int getMaxSteps()  { return _maxSteps; }
+
+/**
+ * Sets the max number of world steps per frame in fixed step mode.
+ */
+public void setMaxSteps(int aValue)  { _maxSteps = aValue; }
+
+/**
+ * Returns the timer frame interval in milliseconds in fixed step mode (default is 16).
+ */
+public int getFrameInterval()  { return _frameInterval; }
+
+/**
+ * Sets the timer frame interval in milliseconds in fixed step mode.
+ */
+public void setFrameInterval(int aValue)  { _frameInterval = aValue; }
+
+/**
+ * Returns the Box2D velocity iterations per step.
+ */
+public int getVelocityIterations()  { return _velIters; }
+
+/**
+ * Sets the Box2D velocity iterations per step.
+ */
+public void setVelocityIterations(int aValue)  { _velIters = aValue; }
+
+/**
+ * Returns the Box2D position iterations per step.
+ */
+public int getPositionIterations()  { return _posIters; }
+
+/**
+ * Sets the Box2D position iterations per step.
+ */
+public void setPositionIterations(int aValue)  { _posIters = aValue; }
+
 /**
  * Called when world timer fires.
  */
 void timerFired()
+{
+    // Reset frame counts and do threaded, fixed step or basic version
+    _syncCount = 0; _stats.startFrame();
+    if(_threaded) timerFiredThreaded();
+    else if(_fixedStep) timerFiredFixedStep();
+    else timerFiredBasic();
+    
+    // Finish stats (if threaded, with world counts published by simulation thread, since it owns world)
+    BodyStates states = _uiStates;
+    if(_threaded) _stats.endFrame(states.bodyCount, states.sleepCount, states.contactCount, states.jointCount,
+        _syncCount);
+    else _stats.endFrame(_world, _bodies, _syncCount);
+    
+    // Repaint stats view
+    if(_statsView!=null) {
+        Rect bnds = _stats.getPaintBounds();
+        if(bnds!=null) _statsView.repaint(bnds); else _statsView.repaint();
+    }
+}
+
+/**
+ * Called when world timer fires in basic mode (one step of timer interval per fire).
+ */
+void timerFiredBasic()
 {
     // Update Statics
+    long time0 = System.nanoTime();
     for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
         updateBody(_view.getChild(i));
         
     // Update world  
-    _world.step(.040f,20,20);
+    long time1 = System.nanoTime();
+    _world.step(.040f, _velIters, _posIters);
     
     // Update Dynamics
+    long time2 = System.nanoTime();
     for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
         updateView(_view.getChild(i));
+    
+    // Add timings
+    _stats.addBodyNanos(time1 - time0); _stats.addStepNanos(time2 - time1, 1);
+    _stats.addViewNanos(System.nanoTime() - time2);
+}
+
+/**
+ * Called when world timer fires in fixed step mode.
+ */
+void timerFiredFixedStep()
+{
+    // Add elapsed time since last frame to accumulator
+    long time = System.nanoTime();
+    _accumTime += _lastTime!=0? (time - _lastTime)/1e9 : _stepTime; _lastTime = time;
+    
+    // Step world while accumulator holds a full step (up to max steps)
+    int steps = 0;
+    while(_accumTime>=_stepTime && steps<_maxSteps) {
+        
+        // Save body states for interpolation and update statics
+        long time0 = System.nanoTime();
+        saveBodyStates();
+        for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
+            updateBody(_view.getChild(i), 1/_stepTime);
+        
+        // Update world
+        long time1 = System.nanoTime();
+        _world.step((float)_stepTime, _velIters, _posIters);
+        _accumTime -= _stepTime; steps++;
+        _stats.addBodyNanos(time1 - time0); _stats.addStepNanos(System.nanoTime() - time1, 1);
+    }
+    
+    // If max steps was hit, drop backlog so a UI stall doesn't cause a burst of catch up steps
+    if(_accumTime>_stepTime) _accumTime = _stepTime;
+    
+    // Update Dynamics, interpolated between last two body states
+    long time2 = System.nanoTime();
+    double alpha = _accumTime/_stepTime;
+    for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
+        updateView(_view.getChild(i), alpha);
+    _stats.addViewNanos(System.nanoTime() - time2);
+}
+
+/**
+ * Called when world timer fires in threaded mode.
+ */
+void timerFiredThreaded()
+{
+    // Publish body targets for statics
+    long time0 = System.nanoTime();
+    publishBodyTargets();
+    _stats.addBodyNanos(System.nanoTime() - time0);
+    
+    // Add simulation thread step time and count since last frame
+    _stats.addStepNanos(_simStepNanos.getAndSet(0), _simSteps.getAndSet(0));
+    
+    // If simulation thread has published newer body states, swap them in (otherwise just return)
+    if(_readyStates.get().stepCount<=_uiStates.stepCount) return;
+    _uiStates = _readyStates.getAndSet(_uiStates);
+    
+    // Update Dynamics from body states
+    long time1 = System.nanoTime();
+    for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
+        updateView(_view.getChild(i), _uiStates);
+    _stats.addViewNanos(System.nanoTime() - time1);
+}
+
+/**
+ * Starts the simulation thread.
+ */
+void startSimThread()
+{
+    // Create body states buffers for sim thread, publishing and UI thread
+    int count = _bodies.size();
+    _simStates = new BodyStates(count); _uiStates = new BodyStates(count);
+    _readyStates.set(new BodyStates(count));
+    
+    // Create body targets buffers for UI thread, publishing and sim thread
+    _uiTargets = new BodyTargets(count); _simTargets = new BodyTargets(count);
+    _readyTargets.set(new BodyTargets(count)); _dragTarget.set(NO_TARGET);
+    
+    // Create and start thread
+    _simThread = new Thread(() -> runSimLoop(), "PhysicsRunner");
+    _simThread.setDaemon(true);
+    _simThread.start();
+}
+
+/**
+ * Stops the simulation thread and waits for it to finish, so world can be accessed from UI thread again.
+ */
+void stopSimThread()
+{
+    // Clear thread and wake it
+    Thread thread = _simThread; if(thread==null) return;
+    _simThread = null; LockSupport.unpark(thread);
+    
+    // Wait for thread to finish and run any remaining queued changes (kinematic velocities are reset by next update)
+    try { thread.join(); }
+    catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+    for(Runnable run=_simQueue.poll(); run!=null; run=_simQueue.poll()) run.run();
+    _simMoved.clear();
+}
+
+/**
+ * The simulation thread loop: Runs queued changes, steps world and publishes body states every step time.
+ */
+void runSimLoop()
+{
+    long stepNanos = (long)(_stepTime*1e9), nextTime = System.nanoTime();
+    while(_simThread==Thread.currentThread()) {
+        
+        // Run queued changes and apply body and drag targets from UI thread
+        for(Runnable run=_simQueue.poll(); run!=null; run=_simQueue.poll()) run.run();
+        applyTargets();
+        
+        // Step world (and add step time)
+        long time = System.nanoTime();
+        _world.step((float)_stepTime, _velIters, _posIters);
+        _simStepNanos.addAndGet(System.nanoTime() - time); _simSteps.incrementAndGet();
+        
+        // Stop kinematic bodies moved by applied targets (velocity was set to reach view in one step, so it must not
+        // be applied again in following steps before next update)
+        for(int i=0,iMax=_simMoved.size();i<iMax;i++) { Body body = _simMoved.get(i);
+            _simVec.setZero(); body.setLinearVelocity(_simVec); body.setAngularVelocity(0); }
+        _simMoved.clear();
+        
+        // Publish body states and world counts
+        _simStates.stepCount = ++_simStepCount; _simStates.read(_bodies); _simStates.readCounts(_world, _bodies);
+        _simStates = _readyStates.getAndSet(_simStates);
+        
+        // Wait for next step time (if behind by more than max steps, drop backlog)
+        nextTime += stepNanos;
+        long wait = nextTime - System.nanoTime();
+        if(wait>0) LockSupport.parkNanos(wait);
+        else if(-wait>stepNanos*_maxSteps) nextTime = System.nanoTime();
+    }
+}
+
+/**
+ * Writes kinematic body targets from views and publishes them for simulation thread (UI thread, once per frame).
+ */
+void publishBodyTargets()
+{
+    _uiTargets.clear();
+    for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
+        updateBody(_view.getChild(i), 1/_stepTime);
+    _uiTargets.stepCount = ++_targetsCount;
+    _uiTargets = _readyTargets.getAndSet(_uiTargets);
+}
+
+/**
+ * Applies body targets and drag target newer than last applied (simulation thread): Kinematic bodies get velocities
+ * to reach targets in one step.
+ */
+void applyTargets()
+{
+    // If newer body targets were published, swap them in and update bodies
+    if(_readyTargets.get().stepCount>_simTargets.stepCount) {
+        _simTargets = _readyTargets.getAndSet(_simTargets); BodyTargets tgts = _simTargets;
+        for(int i=0,iMax=Math.min(_bodies.size(), tgts.x.length);i<iMax;i++) { if(!tgts.isSet[i]) continue;
+            Body body = _bodies.get(i); _simMoved.add(body);
+            updateBody(body, tgts.x[i], tgts.y[i], tgts.a[i], tgts.rate, _simVec);
+        }
+    }
+    
+    // If drag target was published, set it in drag joint
+    long dtgt = _dragTarget.getAndSet(NO_TARGET);
+    if(dtgt!=NO_TARGET && _dragJoint!=null)
+        _dragJoint.setTarget(_simVec.set(Float.intBitsToFloat((int)(dtgt>>32)), Float.intBitsToFloat((int)dtgt)));
+}
+
+/**
+ * Runs given world change on simulation thread before next step, if threaded and running (otherwise runs now).
+ */
+void runOnSim(Runnable aRun)
+{
+    if(_simThread!=null) _simQueue.add(aRun);
+    else aRun.run();
+}
+
+/**
+ * Runs physics headless (without timer) as fast as possible for given number of frames of given interval (in
+ * milliseconds), stepping world with fixed steps and updating views after each frame.
+ */
+public void runFrames(int aCount, int anInterval)
+{
+    // Stop timer (if running)
+    setRunning(false);
+    
+    // Step world and update views for each frame
+    for(int i=0; i<aCount; i++) {
+        stepFrame(anInterval);
+        for(int j=0,jMax=_view.getChildCount();j<jMax;j++)
+            updateView(_view.getChild(j));
+    }
+}
+
+/**
+ * Steps world with fixed steps for one frame of given interval (in milliseconds).
+ */
+void stepFrame(int anInterval)
+{
+    _accumTime += anInterval/1000d;
+    while(_accumTime>=_stepTime) {
+        for(int i=0,iMax=_view.getChildCount();i<iMax;i++)
+            updateBody(_view.getChild(i), 1/_stepTime);
+        _world.step((float)_stepTime, _velIters, _posIters);
+        _accumTime -= _stepTime;
+    }
+}
+
+/**
+ * Runs physics headless for given number of frames of given interval (in milliseconds) and returns the view X, Y
+ * and rotation for each frame (starting with current state) for each of given views (null if not a dynamic body).
+ * Views are left unchanged and bodies are restored to their state before run (so world still matches views).
+ */
+public float[][] getFrames(View theViews[], int aCount, int anInterval)
+{
+    // Stop timer (if running) and create frames arrays for dynamic body views
+    setRunning(false);
+    float frames[][] = new float[theViews.length][];
+    for(int i=0; i<theViews.length; i++) { ViewPhysics phys = theViews[i].getPhysics();
+        if(phys!=null && phys.isDynamic() && phys.getNative() instanceof Body)
+            frames[i] = new float[(aCount+1)*3]; }
+    
+    // Save body states and accumulator
+    float bodyStates[] = getBodyStates(); double accumTime = _accumTime;
+    
+    // Record start state, then step world and record state for each frame
+    readFrames(theViews, frames, 0);
+    for(int i=1; i<=aCount; i++) {
+        stepFrame(anInterval);
+        readFrames(theViews, frames, i);
+    }
+    
+    // Restore body states and accumulator and return frames
+    setBodyStates(bodyStates); _accumTime = accumTime;
+    return frames;
+}
+
+/**
+ * Reads view X, Y and rotation for given frame index from bodies of given views into given frames arrays.
+ */
+void readFrames(View theViews[], float theFrames[][], int anIndex)
+{
+    for(int i=0; i<theViews.length; i++) { float frames[] = theFrames[i]; if(frames==null) continue;
+        View view = theViews[i]; Body body = (Body)view.getPhysics().getNative(); Vec2 pos = body.getPosition();
+        frames[anIndex*3] = (float)(boxToViewX(pos.x) - view.getWidth()/2);
+        frames[anIndex*3+1] = (float)(boxToViewY(pos.y) - view.getHeight()/2);
+        frames[anIndex*3+2] = (float)-Math.toDegrees(body.getAngle());
+    }
+}
+
+/**
+ * Runs physics headless for given number of frames of given interval (in milliseconds) and bakes the resulting view
+ * positions/rotations into ViewAnim key frames, starting at given time. Key frames that are on a line (within given
+ * tolerance) between their neighbors are dropped. Views and bodies are left at current state.
+ */
+public void bakeAnim(int aStart, int aCount, int anInterval, double aTolerance)
+{
+    View views[] = _view.getChildren();
+    float frames[][] = getFrames(views, aCount, anInterval);
+    for(int i=0; i<views.length; i++)
+        if(frames[i]!=null) addAnimKeys(views[i], frames[i], aStart, anInterval, aTolerance);
+}
+
+/**
+ * Runs physics headless on a copy of given view for given number of frames of given interval (in milliseconds) and
+ * bakes the resulting child positions/rotations into ViewAnim key frames of given view children, starting at time 0.
+ * Given view and children are otherwise unchanged.
+ */
+public static void bakeAnim(ParentView aView, int aCount, int anInterval)
+{
+    // Get copy of view and children (before runner removes joint views) and create runner
+    ParentView copy = new ViewArchiver().copy(aView);
+    View copies[] = copy.getChildren(), origs[] = aView.getChildren();
+    PhysicsRunner runner = new PhysicsRunner(copy);
+    
+    // Get frames for copies and bake into original views
+    float frames[][] = runner.getFrames(copies, aCount, anInterval); runner.dispose();
+    for(int i=0; i<copies.length && i<origs.length; i++)
+        if(frames[i]!=null) addAnimKeys(origs[i], frames[i], 0, anInterval, .1);
+}
+
+/**
+ * Adds ViewAnim key frames to given view for given frames (X, Y, rotation per frame, starting with current state).
+ */
+static void addAnimKeys(View aView, float theFrames[], int aStart, int anInterval, double aTolerance)
+{
+    // If view never moves from start state, just return
+    int count = theFrames.length/3; boolean moved = false;
+    for(int i=3; i<count*3 && !moved; i++) moved = Math.abs(theFrames[i] - theFrames[i%3])>aTolerance;
+    if(!moved) return;
+    
+    // If view has keys past start (like from earlier bake), clear anim so baked keys replace them (Animation.getAnim
+    // can't add a key before an existing one)
+    ViewAnim root = aView.getAnim(0);
+    if(root.getMaxTime()>aStart) root.clear();
+    
+    // If not starting at time 0, add key for start state (so anim doesn't interpolate from time 0 to first key)
+    if(aStart>0) addAnimKey(aView, aStart, theFrames, 0);
+    
+    // Add key for each frame that isn't on line between last key and next frame (and for last frame)
+    for(int i=1, last=0; i<count; i++) {
+        if(i<count-1 && isLinear(theFrames, last, i+1, aTolerance)) continue;
+        addAnimKey(aView, aStart + i*anInterval, theFrames, i);
+        last = i;
+    }
+}
+
+/**
+ * Adds a ViewAnim key frame to given view at given time for given frame (just returns if no anim for time).
+ */
+static void addAnimKey(View aView, int aTime, float theFrames[], int anIndex)
+{
+    ViewAnim anim = Animation.getAnim(aView, aTime); if(anim==null) return;
+    anim.setLinear().setX(theFrames[anIndex*3]).setY(theFrames[anIndex*3+1]).setRotate(theFrames[anIndex*3+2]);
+}
+
+/**
+ * Returns whether frames between given start and end frames are on line between them (within given tolerance).
+ */
+static boolean isLinear(float theFrames[], int aStart, int anEnd, double aTolerance)
+{
+    for(int i=aStart+1; i<anEnd; i++) { double t = (i - aStart)/(double)(anEnd - aStart);
+        for(int j=0; j<3; j++) { double v0 = theFrames[aStart*3+j], v1 = theFrames[anEnd*3+j];
+            if(Math.abs(v0 + (v1 - v0)*t - theFrames[i*3+j])>aTolerance) return false; }
+    }
+    return true;
+}
+
+/**
+ * Returns the current position, angle, velocities and awake state of bodies (by body id), to restore later.
+ */
+float[] getBodyStates()
+{
+    float states[] = new float[_bodies.size()*7];
+    for(int i=0,iMax=_bodies.size();i<iMax;i++) { Body body = _bodies.get(i); int j = i*7;
+        Vec2 pos = body.getPosition(), vel = body.getLinearVelocity();
+        states[j] = pos.x; states[j+1] = pos.y; states[j+2] = body.getAngle();
+        states[j+3] = vel.x; states[j+4] = vel.y; states[j+5] = body.getAngularVelocity();
+        states[j+6] = body.isAwake()? 1 : 0; }
+    return states;
+}
+
+/**
+ * Restores body position, angle, velocities and awake state (by body id) from given states.
+ */
+void setBodyStates(float theStates[])
+{
+    for(int i=0,iMax=Math.min(_bodies.size(), theStates.length/7);i<iMax;i++) { Body body = _bodies.get(i); int j = i*7;
+        body.setTransform(_vec.set(theStates[j], theStates[j+1]), theStates[j+2]);
+        body.setLinearVelocity(_vec.set(theStates[j+3], theStates[j+4]));
+        body.setAngularVelocity(theStates[j+5]); body.setAwake(theStates[j+6]!=0); }
+}
+
+/**
+ * Saves current body positions and angles (by body id) for interpolation.
+ */
+void saveBodyStates()
+{
+    for(int i=0,iMax=_bodies.size();i<iMax;i++) { Body body = _bodies.get(i); Vec2 pos = body.getPosition();
+        _prevX[i] = pos.x; _prevY[i] = pos.y; _prevA[i] = body.getAngle(); }
 }
 
 /**
  * Updates a view from a body.
  */
-public void updateView(View aView)
+public void updateView(View aView)  { updateView(aView, 1); }
+
+/**
+ * Updates a view from a body, interpolating between previous and current body state by given fraction.
+ */
+public void updateView(View aView, double aFract)
 {
     // Get ViewPhysics and body
     ViewPhysics <Body> phys = aView.getPhysics(); if(phys==null) return;
@@ -134,51 +747,147 @@ public void updateView(View aView)
     // Handle Body
     if(ntv instanceof Body) { Body body = (Body)ntv; if(!phys.isDynamic()) return;
     
-        // Get/set position
-        Vec2 pos = body.getPosition();
-        Point posV = boxToView(pos.x, pos.y);
-        aView.setXY(posV.x-aView.getWidth()/2, posV.y-aView.getHeight()/2);
+        // If body is asleep and view was already updated to its resting state, just return
+        Vec2 pos = body.getPosition(); int id = (Integer)body.getUserData();
+        double px = pos.x, py = pos.y, angle = body.getAngle();
+        if(!body.isAwake() && px==_syncX[id] && py==_syncY[id] && angle==_syncA[id]) return;
+    
+        // Get body position and angle (interpolated from previous state if fraction less than 1)
+        if(aFract<1) {
+            px = _prevX[id] + (px - _prevX[id])*aFract;
+            py = _prevY[id] + (py - _prevY[id])*aFract;
+            angle = _prevA[id] + (angle - _prevA[id])*aFract;
+        }
         
-        // Get set rotation
-        float angle = body.getAngle();
-        aView.setRotate(-Math.toDegrees(angle));
+        // Set view position and rotation (if changed)
+        syncView(aView, id, px, py, angle);
     }
     
     // Handle Joint
     else if(ntv instanceof RevoluteJoint) { RevoluteJoint joint = (RevoluteJoint)ntv;
     
         // Get/set position
-        Vec2 pos = new Vec2(0,0); joint.getAnchorA(pos);
-        Point posV = boxToView(pos.x, pos.y);
-        aView.setXY(posV.x-aView.getWidth()/2, posV.y-aView.getHeight()/2);
+        Vec2 pos = _vec2; joint.getAnchorA(pos);
+        aView.setXY(boxToViewX(pos.x)-aView.getWidth()/2, boxToViewY(pos.y)-aView.getHeight()/2);
         
         // Get set rotation
         //float angle = joint.getAngle(); aView.setRotate(-Math.toDegrees(angle));
     }
 }
 
+/**
+ * Updates a view from body states published by simulation thread.
+ */
+public void updateView(View aView, BodyStates theStates)
+{
+    // Get ViewPhysics and body (just return if not dynamic body)
+    ViewPhysics <Body> phys = aView.getPhysics(); if(phys==null || !phys.isDynamic()) return;
+    Object ntv = phys.getNative(); if(!(ntv instanceof Body)) return;
+    
+    // Get body id and set view position and rotation (if changed)
+    int id = (Integer)((Body)ntv).getUserData(); if(id>=theStates.x.length) return;
+    syncView(aView, id, theStates.x[id], theStates.y[id], theStates.a[id]);
+}
+
+/**
+ * Sets a view position and rotation for given body id and Box2D position and angle, if changed by more than sync
+ * tolerance since last applied. Returns whether view was updated.
+ */
+boolean syncView(View aView, int anId, double aX, double aY, double anAngle)
+{
+    // If change since last applied is below tolerance, just return
+    double tol = _syncTolerance;
+    if(Math.abs(aX - _syncX[anId])*_scale<tol && Math.abs(aY - _syncY[anId])*_scale<tol &&
+        Math.abs(Math.toDegrees(anAngle - _syncA[anId]))<tol) return false;
+    
+    // Record applied state and set view position and rotation
+    _syncX[anId] = (float)aX; _syncY[anId] = (float)aY; _syncA[anId] = (float)anAngle;
+    setViewXYR(aView, aX, aY, anAngle); _syncCount++;
+    return true;
+}
+
+/**
+ * Returns the min change in view points (or degrees) for a view to be updated from its body (default is .01).
+ */
+public double getSyncTolerance()  { return _syncTolerance; }
+
+/**
+ * Sets the min change in view points (or degrees) for a view to be updated from its body.
+ */
+public void setSyncTolerance(double aValue)  { _syncTolerance = aValue; }
+
+/**
+ * Returns the number of views updated from bodies in last frame.
+ */
+public int getSyncCount()  { return _syncCount; }
+
+/**
+ * Returns the per-frame timings and world counts.
+ */
+public PhysicsStats getStats()  { return _stats; }
+
+/**
+ * Returns the view to repaint after each frame to show updated stats.
+ */
+public View getStatsView()  { return _statsView; }
+
+/**
+ * Sets the view to repaint after each frame to show updated stats.
+ */
+public void setStatsView(View aView)  { _statsView = aView; }
+
+/**
+ * Sets a view center position and rotation for given Box2D position and angle.
+ */
+void setViewXYR(View aView, double aX, double aY, double anAngle)
+{
+    // Get/set position
+    aView.setXY(boxToViewX(aX)-aView.getWidth()/2, boxToViewY(aY)-aView.getHeight()/2);
+    
+    // Get set rotation
+    aView.setRotate(-Math.toDegrees(anAngle));
+}
+
 /**
  * Updates a body from a view.
  */
-public void updateBody(View aView)
+public void updateBody(View aView)  { updateBody(aView, 25); }
+
+/**
+ * Updates a body from a view, with velocity set to cover the change at given rate (steps per second).
+ */
+public void updateBody(View aView, double aRate)
 {
     // Get ViewPhysics and body
     ViewPhysics <Body> phys = aView.getPhysics(); if(phys==null || phys.isDynamic() || phys.isJoint()) return;
     Body body = phys.getNative();
+    
+    // Get view position and rotation in Box2D coords
+    double bx = viewToBoxX(aView.getMidX()), by = viewToBoxY(aView.getMidY());
+    double rot = Math.toRadians(-aView.getRotate());
+    
+    // If simulation thread is running, set body target for next publish, otherwise update now
+    if(_simThread!=null) _uiTargets.set((Integer)body.getUserData(), bx, by, rot, aRate);
+    else updateBody(body, bx, by, rot, aRate, _vec);
+}
 
+/**
+ * Updates a body velocities to reach given position and angle at given rate (steps per second), using given scratch
+ * vector (so UI and simulation thread don't share one).
+ */
+void updateBody(Body aBody, double aX, double aY, double aRot, double aRate, Vec2 aVec)
+{
     // Get/set position
-    Vec2 pos0 = body.getPosition();
-    Vec2 pos1 = viewToBox(aView.getMidX(), aView.getMidY());
-    double vx = (pos1.x - pos0.x)*25;
-    double vy = (pos1.y - pos0.y)*25;
-    body.setLinearVelocity(new Vec2((float)vx, (float)vy));
+    Vec2 pos0 = aBody.getPosition();
+    double vx = (aX - pos0.x)*aRate;
+    double vy = (aY - pos0.y)*aRate;
+    aBody.setLinearVelocity(aVec.set((float)vx, (float)vy));
     
     // Get/set rotation
-    double rot0 = body.getAngle();
-    double rot1 = Math.toRadians(-aView.getRotate());
-    double dr = rot1 - rot0;
+    double rot0 = aBody.getAngle();
+    double dr = aRot - rot0;
     if(dr>Math.PI || dr<-Math.PI) dr = MathUtils.mod(dr + Math.PI, Math.PI*2) - Math.PI;
-    body.setAngularVelocity((float)dr*25);
+    aBody.setAngularVelocity((float)(dr*aRate));
 }
 
 /**
@@ -187,9 +896,35 @@ public void updateBody(View aView)
 public float viewToBox(double aValue)  { return (float)(aValue/_scale); }
 
 /**
- * Convert View coord to Box2D.
+ * Convert View coord to Box2D, as new Vec2 (use version with given Vec2 for per-frame and per-event calls).
+ */
+public Vec2 viewToBox(double aX, double aY)  { return viewToBox(aX, aY, new Vec2()); }
+
+/**
+ * Convert View coord to Box2D, setting into given Vec2.
+ */
+public Vec2 viewToBox(double aX, double aY, Vec2 aVec)
+{
+    return aVec.set((float)viewToBoxX(aX), (float)viewToBoxY(aY));
+}
+
+/**
+ * Convert View X coord to Box2D.
+ */
+public double viewToBoxX(double aX)
+{
+    if(!_vtbValid) updateViewToBox();
+    return aX*_vtbScaleX + _vtbTransX;
+}
+
+/**
+ * Convert View Y coord to Box2D.
  */
-public Vec2 viewToBox(double aX, double aY)  { return getVec(getViewToBox().transform(aX, aY)); }
+public double viewToBoxY(double aY)
+{
+    if(!_vtbValid) updateViewToBox();
+    return aY*_vtbScaleY + _vtbTransY;
+}
 
 /**
  * Convert Box2D coord to View.
@@ -199,30 +934,52 @@ public double boxToView(double aValue)  { return aValue*_scale; }
 /**
  * Convert Box2D coord to View.
  */
-public Point boxToView(double aX, double aY)  { return getBoxToView().transform(aX, aY); }
+public Point boxToView(double aX, double aY)  { return new Point(boxToViewX(aX), boxToViewY(aY)); }
+
+/**
+ * Convert Box2D X coord to View.
+ */
+public double boxToViewX(double aX)
+{
+    if(!_vtbValid) updateViewToBox();
+    return _vtbScaleX!=0? (aX - _vtbTransX)/_vtbScaleX : 0;
+}
+
+/**
+ * Convert Box2D Y coord to View.
+ */
+public double boxToViewY(double aY)
+{
+    if(!_vtbValid) updateViewToBox();
+    return _vtbScaleY!=0? (aY - _vtbTransY)/_vtbScaleY : 0;
+}
 
 /**
  * Returns transform from View coords to Box coords.
  */
 public Transform getViewToBox()
 {
-    // If already set, just return
-    if(_localToBox!=null) return _localToBox;
-    
-    // Create transform from WorldView bounds to World bounds
-    Rect r0 = _view.getBoundsLocal();
-    Rect r1 = new Rect(0, 0, r0.width/_scale, -r0.height/_scale);
-    double bw = r0.width, bh = r0.height;
-    double sx = bw!=0? r1.width/bw : 0, sy = bh!=0? r1.height/bh : 0;
-    Transform trans = Transform.getScale(sx, sy);
-    trans.translate(r1.x - r0.x, r1.y - r0.y);
-    return trans;
+    if(!_vtbValid) updateViewToBox();
+    return new Transform(_vtbScaleX, 0, 0, _vtbScaleY, _vtbTransX, _vtbTransY);
 }
 
 /**
  * Returns transform from Box coords to View coords.
  */
 public Transform getBoxToView()  { return getViewToBox().getInverse(); }
+
+/**
+ * Updates cached transform from WorldView bounds to World bounds (called when invalid after resize or scale change).
+ */
+void updateViewToBox()
+{
+    Rect r0 = _view.getBoundsLocal();
+    Rect r1 = new Rect(0, 0, r0.width/_scale, -r0.height/_scale);
+    double bw = r0.width, bh = r0.height;
+    _vtbScaleX = bw!=0? r1.width/bw : 0; _vtbScaleY = bh!=0? r1.height/bh : 0;
+    _vtbTransX = r1.x - r0.x*_vtbScaleX; _vtbTransY = r1.y - r0.y*_vtbScaleY;
+    _vtbValid = true;
+}
     
 /**
  * Returns a body for a view.
@@ -232,13 +989,14 @@ public Body createBody(View aView)
     // Create BodyDef
     ViewPhysics <Body> phys = aView.getPhysics();
     BodyDef bdef = new BodyDef(); bdef.type = phys.isDynamic()? BodyType.DYNAMIC : BodyType.KINEMATIC;
-    bdef.position.set(viewToBox(aView.getMidX(), aView.getMidY()));
+    viewToBox(aView.getMidX(), aView.getMidY(), bdef.position);
     bdef.angle = (float)Math.toRadians(-aView.getRotate());
     bdef.linearDamping = 10;
     bdef.angularDamping = 10;
     
-    // Create Body
+    // Create Body and add with id
     Body body = _world.createBody(bdef);
+    addBody(body);
     
     // Create PolygonShape
     Shape vshape = aView.getBoundsShape();
@@ -256,6 +1014,25 @@ public Body createBody(View aView)
     return body;
 }
 
+/**
+ * Adds a body to bodies list, setting its id as UserData and growing body state arrays.
+ */
+void addBody(Body aBody)
+{
+    // Add body and set id
+    int id = _bodies.size(); _bodies.add(aBody); aBody.setUserData(id);
+    
+    // Grow body state arrays if needed
+    if(id>=_prevX.length) { int len = Math.max(id*2, 16);
+        _prevX = Arrays.copyOf(_prevX, len); _prevY = Arrays.copyOf(_prevY, len); _prevA = Arrays.copyOf(_prevA, len);
+        _syncX = Arrays.copyOf(_syncX, len); _syncY = Arrays.copyOf(_syncY, len); _syncA = Arrays.copyOf(_syncA, len);
+    }
+    
+    // Set initial state (and clear applied state so view is always updated first time)
+    Vec2 pos = aBody.getPosition(); _prevX[id] = pos.x; _prevY[id] = pos.y; _prevA[id] = aBody.getAngle();
+    _syncX[id] = _syncY[id] = _syncA[id] = Float.NaN;
+}
+
 /**
  * Creates a Box2D shape for given snap shape.
  */
@@ -296,6 +1073,13 @@ public org.jbox2d.collision.shapes.Shape[] createShape(Shape aShape)
     Rect bnds = aShape.getBounds();
     Shape shape = aShape.copyFor(new Transform(-bnds.width/2, -bnds.height/2));
     
+    // If shape geometry was already decomposed at this scale, return cached shapes
+    String key = getShapeKey(shape);
+    synchronized(_shapeCache) {
+        org.jbox2d.collision.shapes.Shape cached[] = _shapeCache.get(key);
+        if(cached!=null) return cached;
+    }
+    
     // Get convex Polygons for shape
     Polygon convexPolys[] = Polygon.getConvexPolys(shape, 8);
     List <org.jbox2d.collision.shapes.Shape> pshapes = new ArrayList();
@@ -309,8 +1093,41 @@ public org.jbox2d.collision.shapes.Shape[] createShape(Shape aShape)
         else System.err.println("PhysicsRunner:.createShape: failure");
     }
     
-    // Return Box2D shapes array
-    return pshapes.toArray(new org.jbox2d.collision.shapes.Shape[0]);
+    // Add Box2D shapes array to cache and return
+    org.jbox2d.collision.shapes.Shape shapes[] = pshapes.toArray(new org.jbox2d.collision.shapes.Shape[0]);
+    synchronized(_shapeCache) { _shapeCache.put(key, shapes); }
+    return shapes;
+}
+
+/**
+ * Returns a key for shape cache from given shape geometry and current scale.
+ */
+String getShapeKey(Shape aShape)
+{
+    StringBuilder sb = new StringBuilder().append(_scale).append(':');
+    PathIter piter = aShape.getPathIter(null); double pts[] = new double[6];
+    while(piter.hasNext()) { Seg seg = piter.getNext(pts);
+        int count = seg==Seg.CubicTo? 6 : seg==Seg.QuadTo? 4 : seg==Seg.Close? 0 : 2;
+        sb.append(' ').append(seg.ordinal());
+        for(int i=0; i<count; i++) sb.append(',').append((float)pts[i]);
+    }
+    return sb.toString();
+}
+
+/**
+ * Returns the max number of entries in shared cache of decomposed Box2D shapes.
+ */
+public static int getShapeCacheMax()  { return _shapeCacheMax; }
+
+/**
+ * Sets the max number of entries in shared cache of decomposed Box2D shapes (zero disables cache).
+ */
+public static void setShapeCacheMax(int aValue)
+{
+    synchronized(_shapeCache) {
+        _shapeCacheMax = aValue;
+        for(Iterator it=_shapeCache.keySet().iterator(); _shapeCache.size()>aValue; ) { it.next(); it.remove(); }
+    }
 }
 
 /**
@@ -333,13 +1150,17 @@ public org.jbox2d.collision.shapes.Shape createShape(Polygon aPoly)
  */
 public void createJoint(View aView)
 {
-    // Get shapes interesting joint view
-    ParentView editor = aView.getParent();
+    // Get body views index for joint parent (just create one if not runner view)
+    ParentView parent = aView.getParent();
+    ViewGrid grid = parent==_view && _bodyGrid!=null? _bodyGrid : new ViewGrid(parent);
+    
+    // Get two topmost body views intersecting joint view, checking only indexed views with frames that intersect
     List <View> hits = new ArrayList();
     Rect bnds = aView.getBoundsParent();
-    for(View v : editor.getChildren()) {
-        if(v!=aView && v.getBoundsLocal().intersects(v.parentToLocal(bnds)))
-            hits.add(v);
+    for(View v : grid.getViewsIntersectingRect(bnds)) {
+        if(v==aView || !(v.getPhysics()!=null && v.getPhysics().getNative() instanceof Body)) continue;
+        if(v.getBoundsLocal().intersects(v.parentToLocal(bnds))) {
+            hits.add(v); if(hits.size()==2) break; }
     }
     
     // if less than two, bail
@@ -374,11 +1195,6 @@ Vec2 viewToBoxLocal(double aX, double aY, View aView)
     return new Vec2(x,y);
 }
 
-/**
- * Return Vec2 for snap Point.
- */
-Vec2 getVec(Point aPnt)  { return new Vec2((float)aPnt.x, (float)aPnt.y); }
-
 /**
  * Adds DragFilter to view.
  */
@@ -397,25 +1213,28 @@ void handleDrag(ViewEvent anEvent)
     ViewPhysics <Body> phys = view.getPhysics();
     Body body = phys.getNative();
     Point pnt = anEvent.getPoint(view.getParent()); anEvent.consume();
+    float tx = (float)viewToBoxX(pnt.x), ty = (float)viewToBoxY(pnt.y);
     
-    // Handle MousePress: Create & install drag MouseJoint
-    if(anEvent.isMousePress()) {
+    // Handle MousePress: Clear any drag target from last drag and create & install drag MouseJoint (on simulation
+    // thread, if running)
+    if(anEvent.isMousePress()) { _dragTarget.set(NO_TARGET); runOnSim(() -> {
         MouseJointDef jdef = new MouseJointDef(); jdef.bodyA = _groundBody; jdef.bodyB = body;
         jdef.collideConnected = true; jdef.maxForce = 1000f*body.getMass();
-        jdef.target.set(viewToBox(pnt.x, pnt.y));
+        jdef.target.set(tx, ty);
         _dragJoint = (MouseJoint)_world.createJoint(jdef);
         body.setAwake(true);
-    }
+    }); }
     
-    // Handle MouseDrag: Update drag MouseJoint
+    // Handle MouseDrag: Update drag MouseJoint (if simulation thread running, publish target instead of queuing change)
     else if(anEvent.isMouseDrag()) {
-        Vec2 target = viewToBox(pnt.x, pnt.y);
-        _dragJoint.setTarget(target);
+        if(_simThread!=null)
+            _dragTarget.set((long)Float.floatToIntBits(tx)<<32 | Float.floatToIntBits(ty) & 0xffffffffL);
+        else if(_dragJoint!=null) _dragJoint.setTarget(_vec.set(tx, ty));
     }
     
     // Handle MouseRelease: Remove drag MouseJoint
-    else if(anEvent.isMouseRelease()) {
-        _world.destroyJoint(_dragJoint); _dragJoint = null; }
+    else if(anEvent.isMouseRelease()) runOnSim(() -> {
+        if(_dragJoint!=null) _world.destroyJoint(_dragJoint); _dragJoint = null; });
 }
 
 /** Called when View gets drag event. */
@@ -438,12 +1257,71 @@ void updateDrag(View aView, double dragX, double dragY)
     ViewPhysics <Body> phys = aView.getPhysics();
     Body body = phys.getNative();
     Vec2 pos0 = body.getPosition();
-    Vec2 pos1 = viewToBox(dragX, dragY);
+    Vec2 pos1 = viewToBox(dragX, dragY, _vec2);
     double dx = pos1.x - pos0.x;
     double dy = pos1.y - pos0.y;
     double vx = (pos1.x - pos0.x)*25;
     double vy = (pos1.y - pos0.y)*25;
-    body.setLinearVelocity(new Vec2((float)vx, (float)vy));
+    body.setLinearVelocity(_vec.set((float)vx, (float)vy));
+}
+
+/**
+ * A snapshot of body positions and angles (by body id), published by simulation thread after each step.
+ */
+public static class BodyStates {
+    
+    // The body positions and angles
+    public final float x[], y[], a[];
+    
+    // The simulation step count when these states were read
+    public long stepCount;
+    
+    // The world counts when these states were read
+    public int bodyCount, sleepCount, contactCount, jointCount;
+    
+    /** Creates BodyStates for given body count. */
+    BodyStates(int aCount)  { x = new float[aCount]; y = new float[aCount]; a = new float[aCount]; }
+    
+    /** Reads states from given bodies. */
+    void read(List <Body> theBodies)
+    {
+        for(int i=0,iMax=Math.min(theBodies.size(), x.length);i<iMax;i++) { Body body = theBodies.get(i);
+            Vec2 pos = body.getPosition(); x[i] = pos.x; y[i] = pos.y; a[i] = body.getAngle(); }
+    }
+    
+    /** Reads world counts from given world and bodies (on thread that owns world). */
+    void readCounts(World aWorld, List <Body> theBodies)
+    {
+        int sleeping = 0; for(int i=0,iMax=theBodies.size();i<iMax;i++) if(!theBodies.get(i).isAwake()) sleeping++;
+        bodyCount = theBodies.size(); sleepCount = sleeping;
+        contactCount = aWorld.getContactCount(); jointCount = aWorld.getJointCount();
+    }
+}
+
+/**
+ * Kinematic body targets (by body id) from view positions and angles, published by UI thread each frame and applied
+ * by simulation thread before next step.
+ */
+static class BodyTargets extends BodyStates {
+    
+    // Whether target is set for body (by body id)
+    final boolean isSet[];
+    
+    // The rate to reach targets (steps per second)
+    double rate;
+    
+    /** Creates BodyTargets for given body count. */
+    BodyTargets(int aCount)  { super(aCount); isSet = new boolean[aCount]; }
+    
+    /** Clears targets. */
+    void clear()  { Arrays.fill(isSet, false); }
+    
+    /** Sets target for given body id. */
+    void set(int anId, double aX, double aY, double anAngle, double aRate)
+    {
+        if(anId>=isSet.length) return;
+        x[anId] = (float)aX; y[anId] = (float)aY; a[anId] = (float)anAngle; isSet[anId] = true; rate = aRate;
+    }
 }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,237 @@
+package studio.app;
+import java.util.*;
+import org.jbox2d.dynamics.*;
+import snap.geom.Rect;
+import snap.gfx.*;
+
+/**
+ * A class to hold per-frame timings and world counts for a PhysicsRunner, with a rolling window of recent frames,
+ * a frame time histogram and a simple overlay paint.
+ */
+public class PhysicsStats {
+    
+    // The timings of current frame (in nanos) for the body update pass, world steps and view update pass
+    long           _bodyNanos, _stepNanos, _viewNanos;
+    
+    // The number of world steps in current frame
+    int            _stepCount;
+    
+    // The rolling window of frame timings (in nanos) and step counts, and the index of next frame in window
+    long           _bodyTimes[] = new long[WINDOW], _stepTimes[] = new long[WINDOW], _viewTimes[] = new long[WINDOW];
+    int            _stepCounts[] = new int[WINDOW], _index;
+    
+    // The total number of frames recorded
+    int            _frameCount;
+    
+    // The world counts from last frame
+    int            _bodyCount, _sleepCount, _contactCount, _jointCount, _syncCount;
+    
+    // The histogram of frame times, by millisecond (last bucket holds all frames over HISTO_MAX)
+    int            _histo[] = new int[HISTO_MAX+1];
+    
+    // The bounds of last overlay paint (in painter coords)
+    Rect           _paintBounds;
+    
+    // The number of frames in rolling window and the max millisecond bucket in histogram
+    public static final int WINDOW = 120;
+    public static final int HISTO_MAX = 50;
+    
+    // The overlay font
+    static Font    _font = Font.Arial12.deriveFont(10d);
+
+/**
+ * Returns the total number of frames recorded.
+ */
+public int getFrameCount()  { return _frameCount; }
+
+/**
+ * Returns the number of bodies in world in last frame.
+ */
+public int getBodyCount()  { return _bodyCount; }
+
+/**
+ * Returns the number of sleeping bodies in last frame.
+ */
+public int getSleepingCount()  { return _sleepCount; }
+
+/**
+ * Returns the number of contacts in world in last frame.
+ */
+public int getContactCount()  { return _contactCount; }
+
+/**
+ * Returns the number of joints in world in last frame.
+ */
+public int getJointCount()  { return _jointCount; }
+
+/**
+ * Returns the number of views updated from bodies in last frame.
+ */
+public int getSyncCount()  { return _syncCount; }
+
+/**
+ * Returns the number of world steps in last frame.
+ */
+public int getStepCount()  { return _frameCount>0? _stepCounts[lastIndex()] : 0; }
+
+/**
+ * Returns the time of body update pass in last frame (in nanos).
+ */
+public long getBodyNanos()  { return _frameCount>0? _bodyTimes[lastIndex()] : 0; }
+
+/**
+ * Returns the time of world steps in last frame (in nanos).
+ */
+public long getStepNanos()  { return _frameCount>0? _stepTimes[lastIndex()] : 0; }
+
+/**
+ * Returns the time of view update pass in last frame (in nanos).
+ */
+public long getViewNanos()  { return _frameCount>0? _viewTimes[lastIndex()] : 0; }
+
+/**
+ * Returns the average time of body update pass over rolling window (in nanos).
+ */
+public long getAverageBodyNanos()  { return getAverage(_bodyTimes); }
+
+/**
+ * Returns the average time of world steps over rolling window (in nanos).
+ */
+public long getAverageStepNanos()  { return getAverage(_stepTimes); }
+
+/**
+ * Returns the average time of view update pass over rolling window (in nanos).
+ */
+public long getAverageViewNanos()  { return getAverage(_viewTimes); }
+
+/**
+ * Returns the max total frame time over rolling window (in nanos).
+ */
+public long getMaxFrameNanos()
+{
+    long max = 0;
+    for(int i=0, iMax=Math.min(_frameCount, WINDOW); i<iMax; i++)
+        max = Math.max(max, _bodyTimes[i] + _stepTimes[i] + _viewTimes[i]);
+    return max;
+}
+
+/**
+ * Returns a copy of the frame time histogram (frame count by millisecond, last bucket holds all slower frames).
+ */
+public int[] getHistogram()  { return Arrays.copyOf(_histo, _histo.length); }
+
+/**
+ * Returns the frame time histogram as CSV text ("millis,frames" rows), for export.
+ */
+public String getHistogramCSV()
+{
+    StringBuffer sb = new StringBuffer("millis,frames\n");
+    for(int i=0; i<HISTO_MAX; i++) sb.append(i).append(',').append(_histo[i]).append('\n');
+    sb.append(HISTO_MAX).append("+,").append(_histo[HISTO_MAX]).append('\n');
+    return sb.toString();
+}
+
+/**
+ * Resets all timings, counts and histogram.
+ */
+public void reset()
+{
+    _bodyNanos = _stepNanos = _viewNanos = 0; _stepCount = 0; _index = _frameCount = 0;
+    _bodyCount = _sleepCount = _contactCount = _jointCount = _syncCount = 0;
+    Arrays.fill(_histo, 0);
+}
+
+/**
+ * Starts a new frame.
+ */
+void startFrame()  { _bodyNanos = _stepNanos = _viewNanos = 0; _stepCount = 0; }
+
+/**
+ * Adds time to body update pass of current frame.
+ */
+void addBodyNanos(long aValue)  { _bodyNanos += aValue; }
+
+/**
+ * Adds time and step count to world steps of current frame.
+ */
+void addStepNanos(long aValue, int aCount)  { _stepNanos += aValue; _stepCount += aCount; }
+
+/**
+ * Adds time to view update pass of current frame.
+ */
+void addViewNanos(long aValue)  { _viewNanos += aValue; }
+
+/**
+ * Ends current frame: Adds timings to rolling window and histogram and sets counts from given world (UI thread only).
+ */
+void endFrame(World aWorld, List <Body> theBodies, int aSyncCount)
+{
+    int sleeping = 0; for(int i=0, iMax=theBodies.size(); i<iMax; i++) if(!theBodies.get(i).isAwake()) sleeping++;
+    endFrame(theBodies.size(), sleeping, aWorld.getContactCount(), aWorld.getJointCount(), aSyncCount);
+}
+
+/**
+ * Ends current frame: Adds timings to rolling window and histogram and sets given world counts.
+ */
+void endFrame(int aBodyCount, int aSleepCount, int aContactCount, int aJointCount, int aSyncCount)
+{
+    // Add timings to rolling window
+    _bodyTimes[_index] = _bodyNanos; _stepTimes[_index] = _stepNanos; _viewTimes[_index] = _viewNanos;
+    _stepCounts[_index] = _stepCount; _index = (_index + 1)%WINDOW; _frameCount++;
+    
+    // Add frame time to histogram
+    int millis = (int)((_bodyNanos + _stepNanos + _viewNanos)/1000000);
+    _histo[Math.min(millis, HISTO_MAX)]++;
+    
+    // Set world counts
+    _bodyCount = aBodyCount; _sleepCount = aSleepCount;
+    _contactCount = aContactCount; _jointCount = aJointCount; _syncCount = aSyncCount;
+}
+
+/**
+ * Returns the rolling window index of last frame.
+ */
+private int lastIndex()  { return (_index + WINDOW - 1)%WINDOW; }
+
+/**
+ * Returns the average of given rolling window timings.
+ */
+private long getAverage(long theTimes[])
+{
+    int count = Math.min(_frameCount, WINDOW); if(count==0) return 0;
+    long total = 0; for(int i=0; i<count; i++) total += theTimes[i];
+    return total/count;
+}
+
+/**
+ * Returns the bounds of last overlay paint (in painter coords), or null if not painted.
+ */
+public Rect getPaintBounds()  { return _paintBounds; }
+
+/**
+ * Paints stats overlay at given point.
+ */
+public void paint(Painter aPntr, double aX, double aY)
+{
+    // Get lines
+    String lines[] = {
+        String.format("Bodies: %d (%d sleeping)  Contacts: %d  Joints: %d", _bodyCount, _sleepCount, _contactCount,
+            _jointCount),
+        String.format("Steps: %d  Views synced: %d", getStepCount(), _syncCount),
+        String.format("Body: %.2fms  Step: %.2fms  View: %.2fms", getAverageBodyNanos()/1e6,
+            getAverageStepNanos()/1e6, getAverageViewNanos()/1e6),
+        String.format("Max frame: %.2fms", getMaxFrameNanos()/1e6)
+    };
+    
+    // Paint background
+    double lh = Math.ceil(_font.getLineHeight()), w = 250, h = lh*lines.length + 8;
+    _paintBounds = new Rect(aX, aY, w, h);
+    aPntr.setColor(new Color(0,0,0,.6)); aPntr.fill(_paintBounds);
+    
+    // Paint lines
+    aPntr.setFont(_font); aPntr.setColor(Color.WHITE);
+    for(int i=0; i<lines.length; i++)
+        aPntr.drawString(lines[i], aX + 6, aY + 4 + lh*i + _font.getAscent());
+}
+
+}
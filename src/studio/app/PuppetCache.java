@@ -0,0 +1,262 @@
+package studio.app;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import snap.gfx.Image;
+import studio.app.Puppet.Part;
+
+/**
+ * A class to read/write a binary cache of a puppet's parts and joints (names, locations and pre-split images) next
+ * to its source, so puppets load without reading the source XML or splitting images. The cache is validated against
+ * the source modified time and size (newest modified time and total size of entries for ORA directories).
+ */
+public class PuppetCache {
+    
+    // The cache paths with a write in progress (so a path is only written by one thread at a time)
+    static Set <String>  _writing = Collections.synchronizedSet(new HashSet());
+    
+    // The cache file magic number and version
+    static final int MAGIC = 0x50555043, VERSION = 2;
+
+/**
+ * Returns a puppet for given source path, from cache if valid (otherwise from source, writing cache).
+ */
+public static Puppet getPuppet(String aPath)
+{
+    // If cache is valid, return cached puppet
+    File cfile = getCacheFile(aPath);
+    Puppet puppet = readCache(aPath, cfile);
+    if(puppet!=null) return puppet;
+    
+    // Create puppet from source and snapshot parts and joints on this thread
+    Puppet puppet2 = new ORAPuppet(aPath);
+    List <PartData> parts = getPartDatas(puppet2, puppet2.getPartNames(), false);
+    List <PartData> joints = getPartDatas(puppet2, puppet2.getJointNames(), true);
+    
+    // Write cache in background (unless already being written)
+    if(_writing.add(cfile.getPath())) {
+        Thread thread = new Thread(() -> {
+            try { writeCache(parts, joints, aPath, cfile); }
+            finally { _writing.remove(cfile.getPath()); }
+        }, "PuppetCache");
+        thread.setDaemon(true); thread.start();
+    }
+    return puppet2;
+}
+
+/**
+ * Returns the cache file for given source path.
+ */
+public static File getCacheFile(String aPath)  { return new File(aPath + ".pcache"); }
+
+/**
+ * Returns the stamp that identifies the source version: modified time and size of source file, or newest modified
+ * time and total size of all files in an exploded ORA directory (so edited layer images invalidate cache).
+ */
+static long[] getStamp(String aPath)
+{
+    File file = new File(aPath); if(!file.exists()) return null;
+    long stamp[] = new long[2]; addStamp(file, stamp);
+    return stamp;
+}
+
+/**
+ * Adds given file (or directory files) modified time and size to given stamp.
+ */
+private static void addStamp(File aFile, long theStamp[])
+{
+    if(aFile.isDirectory()) { File files[] = aFile.listFiles();
+        if(files!=null) for(File file : files) addStamp(file, theStamp); return; }
+    theStamp[0] = Math.max(theStamp[0], aFile.lastModified()); theStamp[1] += aFile.length();
+}
+
+/**
+ * Reads a puppet from given cache file, if it exists and is valid for source.
+ */
+static Puppet readCache(String aPath, File aFile)
+{
+    // If cache or source file missing, just return
+    long stamp[] = getStamp(aPath);
+    if(!aFile.exists() || stamp==null) return null;
+    
+    // Read cache bytes, header and validate, then read parts and joints
+    try {
+        byte bytes[] = Files.readAllBytes(aFile.toPath());
+        ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
+        DataInputStream din = new DataInputStream(bin);
+        if(din.readInt()!=MAGIC || din.readInt()!=VERSION) return null;
+        if(din.readLong()!=stamp[0] || din.readLong()!=stamp[1]) return null;
+        CachedPuppet puppet = new CachedPuppet(aPath, aFile);
+        for(int i=0, iMax=readLength(din, bytes.length); i<iMax; i++) readPart(din, bin, bytes.length, puppet, false);
+        for(int i=0, iMax=readLength(din, bytes.length); i<iMax; i++) readPart(din, bin, bytes.length, puppet, true);
+        return puppet;
+    }
+    
+    // If cache can't be read or is corrupt, complain and return null (source will be read)
+    catch(IOException | RuntimeException e) { System.err.println("PuppetCache.readCache: " + e); return null; }
+}
+
+/**
+ * Reads a length (count or byte count) and validates it against cache file size.
+ */
+private static int readLength(DataInputStream aDin, int aFileSize) throws IOException
+{
+    int len = aDin.readInt();
+    if(len<0 || len>aFileSize) throw new IOException("Invalid length " + len);
+    return len;
+}
+
+/**
+ * Reads a part from given stream and adds to puppet (image bytes are skipped and read on demand from cache file).
+ */
+static void readPart(DataInputStream aDin, ByteArrayInputStream aBin, int aFileSize, CachedPuppet aPuppet,
+    boolean isJoint) throws IOException
+{
+    // Read name (just return if part was missing from source), location and image bytes location
+    String name = aDin.readUTF(); if(!aDin.readBoolean()) return;
+    CachedPart part = new CachedPart(aPuppet, isJoint); part.name = name;
+    part.x = aDin.readDouble(); part.y = aDin.readDouble();
+    part._length = readLength(aDin, aFileSize); part._offset = aFileSize - aBin.available();
+    if(aDin.skipBytes(part._length)!=part._length) throw new EOFException("Truncated image bytes");
+    
+    // Add part
+    if(isJoint) aPuppet._joints.put(part.name, part);
+    else aPuppet._parts.put(part.name, part);
+}
+
+/**
+ * Returns the part data for given part/joint names of puppet (read on caller thread, for background write).
+ */
+static List <PartData> getPartDatas(Puppet aPuppet, String theNames[], boolean isJoint)
+{
+    List <PartData> datas = new ArrayList(theNames.length);
+    for(String name : theNames) {
+        Part part = isJoint? aPuppet.getJoint(name) : aPuppet.getPart(name);
+        datas.add(new PartData(name, part));
+    }
+    return datas;
+}
+
+/**
+ * Writes given part and joint data to given cache file (to unique temp file in same directory and then atomically
+ * moved, so readers never see partial cache).
+ */
+static void writeCache(List <PartData> theParts, List <PartData> theJoints, String aPath, File aFile)
+{
+    // Get stamp and temp file
+    long stamp[] = getStamp(aPath); if(stamp==null) return;
+    File dir = aFile.getAbsoluteFile().getParentFile(), tfile = null;
+    try {
+        tfile = Files.createTempFile(dir.toPath(), aFile.getName(), ".tmp").toFile();
+        try (DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tfile)))) {
+            
+            // Write header
+            dout.writeInt(MAGIC); dout.writeInt(VERSION);
+            dout.writeLong(stamp[0]); dout.writeLong(stamp[1]);
+            
+            // Write parts and joints
+            dout.writeInt(theParts.size()); for(PartData part : theParts) writePart(dout, part);
+            dout.writeInt(theJoints.size()); for(PartData joint : theJoints) writePart(dout, joint);
+        }
+        
+        // Replace cache file with temp file
+        Files.move(tfile.toPath(), aFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // If cache can't be written (e.g. read-only source location), complain and delete temp file
+    catch(IOException e) {
+        System.err.println("PuppetCache.writeCache: " + e);
+        if(tfile!=null) tfile.delete();
+    }
+}
+
+/**
+ * Writes a part to given stream.
+ */
+static void writePart(DataOutputStream aDout, PartData aPart) throws IOException
+{
+    // Write name and whether part exists
+    aDout.writeUTF(aPart.name); aDout.writeBoolean(aPart.exists); if(!aPart.exists) return;
+    
+    // Write location and image bytes
+    byte bytes[] = aPart.image!=null? aPart.image.getBytesPNG() : new byte[0];
+    aDout.writeDouble(aPart.x); aDout.writeDouble(aPart.y);
+    aDout.writeInt(bytes.length); aDout.write(bytes);
+}
+
+/**
+ * A snapshot of a part (name, location and image) for background cache write.
+ */
+static class PartData {
+    
+    // The name, whether part exists, location and image
+    String   name;
+    boolean  exists;
+    double   x, y;
+    Image    image;
+    
+    /** Creates a PartData for given name and part (or null). */
+    PartData(String aName, Part aPart)
+    {
+        name = aName; exists = aPart!=null; if(aPart==null) return;
+        x = aPart.x; y = aPart.y; image = aPart.getImage();
+    }
+}
+
+/**
+ * A Puppet subclass with parts and joints read from cache.
+ */
+static class CachedPuppet extends Puppet {
+    
+    // The cache file and its modified time when read
+    File     _cfile;
+    long     _cfileTime;
+    
+    /** Creates a CachedPuppet for given source and cache file. */
+    CachedPuppet(String aSource, File aCacheFile)
+    {
+        setSource(aSource); _cfile = aCacheFile; _cfileTime = aCacheFile.lastModified();
+    }
+    
+    /** Override to return null for parts missing from cache. */
+    protected Part createPart(String aName)  { return null; }
+    
+    /** Override to return null for joints missing from cache. */
+    protected Part createJoint(String aName)  { return null; }
+}
+
+/**
+ * A Part whose image is read on demand from cache file into shared ImageCache (instead of held by part).
+ */
+static class CachedPart extends Part {
+    
+    // The puppet, whether part is joint, and the location of image bytes in cache file
+    CachedPuppet  _puppet;
+    boolean       _joint;
+    int           _offset, _length;
+    
+    /** Creates a CachedPart. */
+    CachedPart(CachedPuppet aPuppet, boolean isJoint)  { _puppet = aPuppet; _joint = isJoint; }
+    
+    /** Override to get image from shared ImageCache. */
+    public Image getImage()
+    {
+        if(_length==0) return null;
+        String key = _puppet._cfile.getPath() + '@' + _puppet._cfileTime + (_joint? "#J:" : "#P:") + name;
+        return ImageCache.getShared().getImage(key, () -> readImage());
+    }
+    
+    /** Reads image bytes from cache file (returns null if cache file changed since read). */
+    Image readImage()
+    {
+        File cfile = _puppet._cfile; if(cfile.lastModified()!=_puppet._cfileTime) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(cfile, "r")) {
+            byte bytes[] = new byte[_length]; raf.seek(_offset); raf.readFully(bytes);
+            return Image.get(bytes);
+        }
+        catch(IOException e) { System.err.println("PuppetCache.readImage: " + e); return null; }
+    }
+}
+
+}
@@ -14,6 +14,13 @@ public class PuppetView extends ParentView {
     
     // The scale
     double     _scale = 1;
+    
+    // The resolution of child images as fraction of part image resolution (a power of two, mip-style)
+    double     _imageLevel = 1;
+    
+    // The viewer this view is showing in and a listener for its zoom changes (to update image level)
+    Viewer     _viewer;
+    PropChangeListener  _zoomLsnr = pc -> updateImageLevel();
 
 /**
  * Creates a PuppetView.
@@ -26,7 +33,7 @@ public PuppetView()  { }
 public PuppetView(String aSource, double aScale)
 {
     // Set puppet and scale
-    Puppet puppet = new ORAPuppet(aSource);
+    Puppet puppet = PuppetCache.getPuppet(aSource);
     _scale = aScale;
     
     // Set puppet
@@ -77,6 +84,85 @@ void addAllParts()
     // Resize children
     for(View c : getChildren())
         c.setBounds(c.getX()*_scale, c.getY()*_scale, c.getWidth()*_scale, c.getHeight()*_scale);
+    
+    // Set child images downsampled for scale
+    _imageLevel = 1; setImageLevel(getImageLevel(1));
+}
+
+/**
+ * Returns the image level (fraction of part image resolution, as a power of two) needed for given zoom factor.
+ */
+double getImageLevel(double aZoom)
+{
+    double scale = _scale*aZoom; if(scale>=1) return 1;
+    return 1/Math.pow(2, Math.floor(Math.log(1/scale)/Math.log(2)));
+}
+
+/**
+ * Sets child images to part images downsampled to given image level.
+ */
+void setImageLevel(double aLevel)
+{
+    // If already set, just return
+    if(aLevel==_imageLevel) return;
+    _imageLevel = aLevel;
+    
+    // Iterate over parts and joints and set image of child
+    for(String pname : _puppet.getPartNames()) setImageLevel(_puppet.getPart(pname), aLevel);
+    for(String jname : _puppet.getJointNames()) setImageLevel(_puppet.getJoint(jname), aLevel);
+}
+
+/**
+ * Sets child image for given part to part image downsampled to given image level.
+ */
+void setImageLevel(Part aPart, double aLevel)
+{
+    if(aPart==null || aPart.getImage()==null) return;
+    View child = getChild(aPart.name); if(!(child instanceof ImageView)) return;
+    ((ImageView)child).setImage(getPartImage(aPart, aLevel));
+}
+
+/**
+ * Returns the part image downsampled to given image level (shared in ImageCache by source, part and level).
+ */
+Image getPartImage(Part aPart, double aLevel)
+{
+    // If full level, just return part image
+    Image img = aPart.getImage(); if(aLevel>=1) return img;
+    
+    // Get downsampled image from cache (or create)
+    String key = _puppet.getSource() + "#" + aPart.name + '@' + aLevel;
+    return ImageCache.getShared().getImage(key, () -> {
+        int w = Math.max((int)Math.round(img.getPixWidth()*aLevel), 1);
+        int h = Math.max((int)Math.round(img.getPixHeight()*aLevel), 1);
+        Image img2 = Image.get(w, h, true);
+        img2.getPainter().drawImage(img, 0, 0, w, h);
+        return img2;
+    });
+}
+
+/**
+ * Regenerates child images at higher resolution if viewer zoom exceeds current image level.
+ */
+void updateImageLevel()
+{
+    double level = getImageLevel(_viewer!=null? _viewer.getZoomFactor() : 1);
+    if(level>_imageLevel) setImageLevel(level);
+}
+
+/**
+ * Override to listen for viewer zoom changes while showing (and update image level for current zoom).
+ */
+protected void setShowing(boolean aValue)
+{
+    // Do normal version
+    if(aValue==isShowing()) return; super.setShowing(aValue);
+    
+    // Stop listening to old viewer and if showing, listen to new viewer and update image level
+    if(_viewer!=null) _viewer.removePropChangeListener(_zoomLsnr, "ZoomFactor");
+    _viewer = aValue? getParent(Viewer.class) : null;
+    if(_viewer!=null) _viewer.addPropChangeListener(_zoomLsnr, "ZoomFactor");
+    if(aValue) updateImageLevel();
 }
 
 /**
@@ -150,7 +236,7 @@ public ParentView fromXML(XMLArchiver anArchiver, XMLElement anElement)
     
     // Unarchive Path, Scale
     String path = anElement.getAttributeValue("Path");
-    Puppet puppet = new ORAPuppet(path);
+    Puppet puppet = PuppetCache.getPuppet(path);
     _scale = anElement.getAttributeDoubleValue("Scale");
     setPuppet(puppet);
     
@@ -202,6 +202,12 @@ public void mouseDragged(ViewEvent anEvent)
             Point point = getEventPointInSuperSelectedView(false);
             moveViews(_lastMousePoint, point); _lastMousePoint = point;
             
+            // If snapping, move views again to point snapped to proximity guides and reset LastMousePoint again
+            if(shouldSnap) {
+                Point pointSnapped = EditorProxGuide.pointSnappedToProximityGuides(editor, point);
+                if(pointSnapped!=point) { moveViews(point, pointSnapped); _lastMousePoint = pointSnapped; }
+            }
+            
             // Get event point snapped to grid & edges, since SnapEdges will now be valid
             //ParentView parent = editor.getSuperSelectedParentView();
             //Point pointSnapped = getEventPointInShape(shouldSnap, shouldSnap);
@@ -231,6 +237,7 @@ public void mouseDragged(ViewEvent anEvent)
             
             // Get event point in super selected shape coords and move handle 
             Point resizePoint = getEventPointInSuperSelectedView(shouldSnap);
+            if(shouldSnap) resizePoint = EditorProxGuide.pointSnappedToProximityGuides(editor, resizePoint);
             moveViewHandle(_viewHandle, resizePoint);
             break;
 
@@ -238,28 +245,25 @@ public void mouseDragged(ViewEvent anEvent)
         case Select:
 
             // Get current hit shapes
-            List <View> newShapes = getHitShapes();
+            List <View> newShapes = getHitShapes(), selShapes = newShapes;
             
-            // Repaint selected views and SelectionRect
-            for(View v : _whileSelectingSelectedShapes) v.repaint();
-            editor.repaint(content.localToParent(_selectionRect.getInsetRect(-2), editor).getBounds());
-            
-            // Get new _selectionRect and clear _whileSelectingSelectedShapes
-            _selectionRect = Rect.get(_downPoint, content.parentToLocal(anEvent.getX(), anEvent.getY(), editor));
-            _whileSelectingSelectedShapes.clear();
-
             // If shift key was down, exclusive OR (xor) newShapes with selectedShapes
             if(anEvent.isShiftDown()) {
                 List xor = ListUtils.clone(editor.getSelectedViews());
                 ListUtils.xor(xor, newShapes);
-                _whileSelectingSelectedShapes.addAll(xor);
+                selShapes = xor;
             }
             
-            // If shit key not down, select all new shapes
-            else _whileSelectingSelectedShapes.addAll(newShapes);
+            // Repaint views whose selecting state changed since last drag and old SelectionRect
+            repaintChangedViews(_whileSelectingSelectedShapes, selShapes);
+            editor.repaint(content.localToParent(_selectionRect.getInsetRect(-2), editor).getBounds());
+            
+            // Get new _selectionRect and reset _whileSelectingSelectedShapes
+            _selectionRect = Rect.get(_downPoint, content.parentToLocal(anEvent.getX(), anEvent.getY(), editor));
+            _whileSelectingSelectedShapes.clear();
+            _whileSelectingSelectedShapes.addAll(selShapes);
 
-            // Repaint selected views and SelectionRect
-            for(View v : _whileSelectingSelectedShapes) v.repaint();
+            // Repaint SelectionRect
             editor.repaint(content.localToParent(_selectionRect.getInsetRect(-2),editor).getBounds());
 
             // break
@@ -320,8 +324,9 @@ public void mouseReleased(ViewEvent anEvent)
         default: break;
     }
     
-    // Clear proximity guidelines
+    // Clear proximity guidelines and edges
     EditorProxGuide.clearGuidelines(editor);
+    EditorProxGuide.clearEdges();
 
     // Repaint editor
     editor.repaint();
@@ -436,10 +441,29 @@ private List <View> getHitShapes()
     if(superView==content && editor.getContentPage()!=null) { superView = editor.getContentPage();
         path = superView.parentToLocal(selRect); editor.setSuperSelectedView(superView); }
 
+    // If super-selected shape has view grid, return children from grid candidates that intersect selection path
+    ViewGrid grid = editor.getViewGrid(superView);
+    if(grid!=null) {
+        List <View> views = grid.getViewsIntersectingRect(path.getBounds()), hits = new ArrayList(views.size());
+        for(int i=views.size()-1; i>=0; i--) { View view = views.get(i);
+            if(view.intersects(view.parentToLocal(path))) hits.add(view); }
+        return hits;
+    }
+
     // Returns the children of the super-selected shape that intersect selection path
     return superView.getChildrenAt(path, null, null);
 }
 
+/**
+ * Repaints the views that are in only one of given old and new lists.
+ */
+private void repaintChangedViews(List <View> theOldViews, List <View> theNewViews)
+{
+    Set <View> oldViews = Collections.newSetFromMap(new IdentityHashMap()); oldViews.addAll(theOldViews);
+    for(View view : theNewViews) if(!oldViews.remove(view)) view.repaint();
+    for(View view : oldViews) view.repaint();
+}
+
 /**
  * Returns the last drag mode handled by the select tool.
  */
@@ -0,0 +1,303 @@
+package studio.app;
+import java.util.*;
+import snap.geom.Rect;
+import snap.view.*;
+
+/**
+ * A uniform grid spatial index of the children of a ParentView (by frame in parent coords), to quickly find the
+ * children that intersect a rect or contain a point without testing every child.
+ */
+public class ViewGrid {
+    
+    // The parent view
+    ParentView               _parent;
+    
+    // The size of a grid cell
+    double                   _cellSize;
+    
+    // The grid cells (by cell key from cell column/row)
+    Map <Long,List<Entry>>   _cells = new HashMap();
+    
+    // The entries for views that span too many cells, which are always checked
+    List <Entry>             _bigEntries = new ArrayList();
+    
+    // The entries by view
+    Map <View,Entry>         _entries = new IdentityHashMap();
+    
+    // The current query stamp (to avoid returning an entry twice)
+    int                      _stamp;
+    
+    // The max number of cells an entry can span before it is treated as big
+    static final int         MAX_CELLS = 256;
+    
+    // The gap between z-order keys of adjacent views (so an added view gets a key between its neighbors)
+    static final long        ORDER_GAP = 1L<<20;
+
+/**
+ * Creates a ViewGrid for given parent and all its children, with cell size from the average child size.
+ */
+public ViewGrid(ParentView aParent)  { this(aParent, getCellSize(aParent.getChildren()), aParent.getChildren()); }
+
+/**
+ * Creates a ViewGrid for given parent and given children with given cell size.
+ */
+public ViewGrid(ParentView aParent, double aCellSize, View theChildren[])
+{
+    _parent = aParent; _cellSize = Math.max(aCellSize, 1);
+    
+    // Add given children with z-order keys from index in parent (one pass over parent children)
+    Set <View> views = Collections.newSetFromMap(new IdentityHashMap()); Collections.addAll(views, theChildren);
+    for(int i=0, iMax=aParent.getChildCount(); i<iMax; i++) { View child = aParent.getChild(i);
+        if(!views.contains(child)) continue;
+        Entry entry = new Entry(child); entry.order = i*ORDER_GAP;
+        _entries.put(child, entry);
+        setEntryBounds(entry, child.getBoundsParent());
+    }
+}
+
+/**
+ * Returns the parent view.
+ */
+public ParentView getParent()  { return _parent; }
+
+/**
+ * Returns the size of a grid cell.
+ */
+public double getCellSize()  { return _cellSize; }
+
+/**
+ * Returns the number of views in grid.
+ */
+public int getViewCount()  { return _entries.size(); }
+
+/**
+ * Returns whether grid contains given view.
+ */
+public boolean containsView(View aView)  { return _entries.containsKey(aView); }
+
+/**
+ * Adds a view to grid for given index in parent (call when view is added to parent). Other views keep their z-order
+ * keys, since the new view gets a key between those of its neighbors.
+ */
+public void addView(View aView, int anIndex)
+{
+    // If already added, just update
+    if(_entries.containsKey(aView)) { updateView(aView); return; }
+    
+    // Create entry, add, set z-order key and bounds
+    Entry entry = new Entry(aView);
+    _entries.put(aView, entry);
+    setEntryOrder(entry, anIndex);
+    setEntryBounds(entry, aView.getBoundsParent());
+}
+
+/**
+ * Removes a view from grid (other views keep their z-order keys).
+ */
+public void removeView(View aView)
+{
+    Entry entry = _entries.remove(aView); if(entry==null) return;
+    removeEntryCells(entry);
+}
+
+/**
+ * Updates a view in grid (call when view frame changes).
+ */
+public void updateView(View aView)
+{
+    // Get entry (if not found, just return)
+    Entry entry = _entries.get(aView); if(entry==null) return;
+    
+    // Get new bounds and cell range (if cells unchanged, just update bounds and return)
+    Rect bnds = aView.getBoundsParent();
+    int x0 = getCell(bnds.x), y0 = getCell(bnds.y), x1 = getCell(bnds.getMaxX()), y1 = getCell(bnds.getMaxY());
+    if(x0==entry.x0 && y0==entry.y0 && x1==entry.x1 && y1==entry.y1) {
+        entry.x = bnds.x; entry.y = bnds.y; entry.mx = bnds.getMaxX(); entry.my = bnds.getMaxY(); return; }
+    
+    // Remove from old cells and add to new
+    removeEntryCells(entry);
+    setEntryBounds(entry, bnds);
+}
+
+/**
+ * Resets the z-order keys of views from index in parent (call when parent children are reordered).
+ */
+public void resetIndexes()
+{
+    for(int i=0, iMax=_parent.getChildCount(); i<iMax; i++) {
+        Entry entry = _entries.get(_parent.getChild(i));
+        if(entry!=null) entry.order = i*ORDER_GAP;
+    }
+}
+
+/**
+ * Returns the views whose frame intersects given rect (in parent coords), in z-order with topmost first.
+ */
+public List <View> getViewsIntersectingRect(Rect aRect)
+{
+    // Get cell range for rect and new query stamp
+    int x0 = getCell(aRect.x), y0 = getCell(aRect.y), x1 = getCell(aRect.getMaxX()), y1 = getCell(aRect.getMaxY());
+    List <Entry> hits = new ArrayList(); _stamp++;
+    
+    // If rect spans more cells than there are entries, just check all entries
+    if((long)(x1-x0+1)*(y1-y0+1)>_entries.size()) {
+        for(Entry entry : _entries.values())
+            if(entry.intersects(aRect)) hits.add(entry);
+    }
+    
+    // Otherwise check entries in cells
+    else {
+        for(int x=x0; x<=x1; x++) for(int y=y0; y<=y1; y++) {
+            List <Entry> cell = _cells.get(getKey(x, y)); if(cell==null) continue;
+            addHits(cell, aRect, hits);
+        }
+        addHits(_bigEntries, aRect, hits);
+    }
+    
+    // Return views for hits in z-order, topmost first
+    return getViews(hits);
+}
+
+/**
+ * Returns the views whose frame contains given point (in parent coords), in z-order with topmost first.
+ */
+public List <View> getViewsAtPoint(double aX, double aY)
+{
+    // Get cell for point
+    List <Entry> hits = new ArrayList();
+    List <Entry> cell = _cells.get(getKey(getCell(aX), getCell(aY)));
+    
+    // Check entries in cell and big entries
+    if(cell!=null) for(Entry entry : cell)
+        if(entry.contains(aX, aY)) hits.add(entry);
+    for(Entry entry : _bigEntries)
+        if(entry.contains(aX, aY)) hits.add(entry);
+    
+    // Return views for hits in z-order, topmost first
+    return getViews(hits);
+}
+
+/**
+ * Adds entries in given list that intersect given rect and haven't been hit in current query.
+ */
+private void addHits(List <Entry> theEntries, Rect aRect, List <Entry> theHits)
+{
+    for(int i=0, iMax=theEntries.size(); i<iMax; i++) { Entry entry = theEntries.get(i);
+        if(entry.stamp==_stamp) continue; entry.stamp = _stamp;
+        if(entry.intersects(aRect)) theHits.add(entry);
+    }
+}
+
+/**
+ * Returns the views for given entries sorted by z-order, topmost first.
+ */
+private List <View> getViews(List <Entry> theEntries)
+{
+    if(theEntries.size()>1) theEntries.sort((e1,e2) -> Long.compare(e2.order, e1.order));
+    List <View> views = new ArrayList(theEntries.size());
+    for(Entry entry : theEntries) views.add(entry.view);
+    return views;
+}
+
+/**
+ * Sets entry z-order key for given index in parent: Between the keys of nearest views in grid below and above it (if
+ * there is no key left between them, resets all keys).
+ */
+private void setEntryOrder(Entry anEntry, int anIndex)
+{
+    // Get nearest entries below and above index
+    Entry below = null, above = null;
+    for(int i=anIndex-1; i>=0 && below==null; i--) below = _entries.get(_parent.getChild(i));
+    for(int i=anIndex+1, iMax=_parent.getChildCount(); i<iMax && above==null; i++)
+        above = _entries.get(_parent.getChild(i));
+    
+    // Set key after below, before above or between them
+    if(above==null) anEntry.order = below!=null? below.order + ORDER_GAP : 0;
+    else if(below==null) anEntry.order = above.order - ORDER_GAP;
+    else if(above.order - below.order>1) anEntry.order = below.order + (above.order - below.order)/2;
+    else resetIndexes();
+}
+
+/**
+ * Sets entry bounds and adds entry to cells for bounds.
+ */
+private void setEntryBounds(Entry anEntry, Rect aRect)
+{
+    // Set bounds and cell range
+    anEntry.x = aRect.x; anEntry.y = aRect.y; anEntry.mx = aRect.getMaxX(); anEntry.my = aRect.getMaxY();
+    anEntry.x0 = getCell(anEntry.x); anEntry.y0 = getCell(anEntry.y);
+    anEntry.x1 = getCell(anEntry.mx); anEntry.y1 = getCell(anEntry.my);
+    
+    // If entry spans too many cells, add to big entries
+    if((long)(anEntry.x1-anEntry.x0+1)*(anEntry.y1-anEntry.y0+1)>MAX_CELLS) { _bigEntries.add(anEntry); return; }
+    
+    // Add to cells
+    for(int x=anEntry.x0; x<=anEntry.x1; x++) for(int y=anEntry.y0; y<=anEntry.y1; y++) {
+        Long key = getKey(x, y);
+        List <Entry> cell = _cells.get(key); if(cell==null) _cells.put(key, cell = new ArrayList(4));
+        cell.add(anEntry);
+    }
+}
+
+/**
+ * Removes entry from cells for its current bounds.
+ */
+private void removeEntryCells(Entry anEntry)
+{
+    // If entry is big, remove from big entries
+    if((long)(anEntry.x1-anEntry.x0+1)*(anEntry.y1-anEntry.y0+1)>MAX_CELLS) { _bigEntries.remove(anEntry); return; }
+    
+    // Remove from cells (and remove empty cells)
+    for(int x=anEntry.x0; x<=anEntry.x1; x++) for(int y=anEntry.y0; y<=anEntry.y1; y++) {
+        Long key = getKey(x, y);
+        List <Entry> cell = _cells.get(key); if(cell==null) continue;
+        cell.remove(anEntry); if(cell.isEmpty()) _cells.remove(key);
+    }
+}
+
+/**
+ * Returns the cell column/row for given coord.
+ */
+private int getCell(double aValue)  { return (int)Math.floor(aValue/_cellSize); }
+
+/**
+ * Returns the cell key for given cell column/row.
+ */
+private static long getKey(int aX, int aY)  { return ((long)aX<<32) | (aY & 0xffffffffL); }
+
+/**
+ * Returns a cell size for given views (twice the average view size).
+ */
+public static double getCellSize(View theViews[])
+{
+    double total = 0; for(View view : theViews) total += Math.max(view.getWidth(), view.getHeight());
+    return theViews.length>0? Math.max(total/theViews.length*2, 8) : 100;
+}
+
+/**
+ * An entry for a view in grid.
+ */
+private static class Entry {
+    
+    // The view
+    View    view;
+    
+    // The view frame in parent coords and the cell range
+    double  x, y, mx, my;
+    int     x0, y0, x1, y1;
+    
+    // The view z-order key (increases with index in parent) and the last query stamp
+    long    order;
+    int     stamp;
+    
+    /** Creates an Entry. */
+    Entry(View aView)  { view = aView; }
+    
+    /** Returns whether entry frame intersects given rect. */
+    boolean intersects(Rect aRect)  { return x<=aRect.getMaxX() && aRect.x<=mx && y<=aRect.getMaxY() && aRect.y<=my; }
+    
+    /** Returns whether entry frame contains given point. */
+    boolean contains(double aX, double aY)  { return x<=aX && aX<=mx && y<=aY && aY<=my; }
+}
+
+}
@@ -0,0 +1,195 @@
+package studio.app;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import snap.util.*;
+
+/**
+ * A class to write an XMLElement tree directly to an OutputStream or channel as buffered UTF-8, element by element,
+ * instead of building the whole document as a String and byte array first. Written elements can be released from the
+ * tree (once their parent is written), so the written part of the tree can be collected during the write.
+ *
+ * Output is meant to be byte for byte the same as XMLElement.getBytes() (prolog, two space indent, escapes). Since
+ * that format belongs to SnapKit, writeXML() checks it once with a round trip of a sample tree and falls back to
+ * getBytes() if the output differs.
+ */
+public class XMLWriter implements Closeable {
+    
+    // The writer
+    Writer         _writer;
+    
+    // Whether to remove elements from their parent once written
+    boolean        _release;
+    
+    // Whether output matches XMLElement.getBytes() (checked once, lazily)
+    static Boolean   _compatible;
+    
+    // The XML prolog
+    static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    
+    // The buffer size
+    static final int BUFFER_SIZE = 64*1024;
+
+/**
+ * Creates an XMLWriter for given OutputStream.
+ */
+public XMLWriter(OutputStream anOS)
+{
+    _writer = new BufferedWriter(new OutputStreamWriter(anOS, StandardCharsets.UTF_8), BUFFER_SIZE);
+}
+
+/**
+ * Creates an XMLWriter for given channel.
+ */
+public XMLWriter(WritableByteChannel aChannel)
+{
+    _writer = new BufferedWriter(Channels.newWriter(aChannel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE);
+}
+
+/**
+ * Returns whether to remove elements from their parent once written.
+ */
+public boolean isRelease()  { return _release; }
+
+/**
+ * Sets whether to remove elements from their parent once written.
+ */
+public void setRelease(boolean aValue)  { _release = aValue; }
+
+/**
+ * Writes XML prolog and given element (and its children) and flushes.
+ */
+public void write(XMLElement anElement) throws IOException
+{
+    _writer.write(PROLOG);
+    writeElement(anElement, 0);
+    _writer.flush();
+}
+
+/**
+ * Writes given element and its children at given indent level.
+ */
+protected void writeElement(XMLElement anElement, int aLevel) throws IOException
+{
+    // Write indent, name and attributes
+    Writer w = _writer;
+    for(int i=0; i<aLevel; i++) w.write("  ");
+    w.write('<'); w.write(anElement.getName());
+    for(int i=0, iMax=anElement.getAttributeCount(); i<iMax; i++) { XMLAttribute attr = anElement.getAttribute(i);
+        w.write(' '); w.write(attr.getName()); w.write("=\""); writeEscaped(attr.getValue()); w.write('"'); }
+    
+    // If no value or children, close element and return
+    String value = anElement.getValue(); int count = anElement.getElementCount();
+    if(value==null && count==0) { w.write(" />\n"); return; }
+    w.write('>');
+    
+    // Write value
+    if(value!=null) writeEscaped(value);
+    
+    // Write children (if releasing, remove children once all are written, from back so removal is cheap)
+    if(count>0) { w.write('\n');
+        for(int i=0; i<count; i++) writeElement(anElement.getElement(i), aLevel + 1);
+        if(_release) for(int i=count-1; i>=0; i--) anElement.removeElement(i);
+        for(int i=0; i<aLevel; i++) w.write("  ");
+    }
+    
+    // Write close tag
+    w.write("</"); w.write(anElement.getName()); w.write(">\n");
+}
+
+/**
+ * Writes given string with XML special characters escaped (other control characters are written as character
+ * references, so they aren't lost).
+ */
+protected void writeEscaped(String aStr) throws IOException
+{
+    Writer w = _writer; if(aStr==null) return;
+    for(int i=0, iMax=aStr.length(); i<iMax; i++) { char c = aStr.charAt(i);
+        switch(c) {
+            case '&': w.write("&amp;"); break;
+            case '<': w.write("&lt;"); break;
+            case '>': w.write("&gt;"); break;
+            case '"': w.write("&quot;"); break;
+            case '\n': w.write("&#10;"); break;
+            case '\r': w.write("&#13;"); break;
+            case '\t': w.write("&#9;"); break;
+            default: if(c<0x20) { w.write("&#"); w.write(Integer.toString(c)); w.write(';'); }
+                else w.write(c);
+        }
+    }
+}
+
+/**
+ * Closes writer (and underlying stream or channel).
+ */
+public void close() throws IOException  { _writer.close(); }
+
+/**
+ * Writes given element to given stream and closes it: Streamed if output matches XMLElement.getBytes(), otherwise
+ * with getBytes(). If release is set, streamed elements are removed from tree once written.
+ */
+public static void writeXML(XMLElement anElement, OutputStream anOS, boolean doRelease) throws IOException
+{
+    // If not compatible, just write getBytes()
+    if(!isCompatible()) { try (OutputStream os = anOS) { os.write(anElement.getBytes()); } return; }
+    
+    // Stream element
+    try (XMLWriter xwriter = new XMLWriter(anOS)) { xwriter.setRelease(doRelease); xwriter.write(anElement); }
+}
+
+/**
+ * Returns given element as bytes, written to a buffer of given size hint (the last written size is a good guess).
+ * If the guess is exact, the buffer is returned without copying it again.
+ */
+public static byte[] getBytes(XMLElement anElement, int aSizeHint)
+{
+    ByteBuffer bbuf = new ByteBuffer(Math.max(aSizeHint, 1024));
+    try { writeXML(anElement, bbuf, false); }
+    catch(IOException e) { throw new RuntimeException(e); }
+    return bbuf.getBytes();
+}
+
+/**
+ * Returns whether output matches XMLElement.getBytes() (round trip of sample tree, checked once).
+ */
+public static synchronized boolean isCompatible()
+{
+    if(_compatible==null) _compatible = checkRoundTrip();
+    return _compatible;
+}
+
+/**
+ * Writes a sample tree (attributes with special chars, nested children, text value, empty element) with XMLWriter and
+ * with XMLElement.getBytes() and returns whether bytes are the same.
+ */
+static boolean checkRoundTrip()
+{
+    // Create sample tree
+    XMLElement xml = new XMLElement("Doc"); xml.add("name", "A & \"B\" <C>");
+    XMLElement child = new XMLElement("View"); child.add("x", "10"); child.add("y", "20.5"); xml.add(child);
+    XMLElement text = new XMLElement("Text"); text.setValue("Hello <World> & more"); child.add(text);
+    xml.add(new XMLElement("Empty"));
+    
+    // Write with XMLWriter and compare with getBytes()
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (XMLWriter xwriter = new XMLWriter(bout)) { xwriter.write(xml); }
+    catch(IOException e) { return false; }
+    boolean same = Arrays.equals(bout.toByteArray(), xml.getBytes());
+    if(!same) System.err.println("XMLWriter: Output differs from XMLElement.getBytes(), using getBytes()");
+    return same;
+}
+
+/**
+ * A ByteArrayOutputStream that returns its buffer without a copy when it is exactly full.
+ */
+private static class ByteBuffer extends ByteArrayOutputStream {
+    
+    /** Creates ByteBuffer with given initial size. */
+    ByteBuffer(int aSize)  { super(aSize); }
+    
+    /** Returns bytes written (the buffer itself, if full). */
+    byte[] getBytes()  { return count==buf.length? buf : toByteArray(); }
+}
+
+}
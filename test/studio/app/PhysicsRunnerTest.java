@@ -0,0 +1,78 @@
+package studio.app;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import snap.view.*;
+
+/**
+ * Tests for PhysicsRunner: Per-step allocations with many bodies.
+ */
+public class PhysicsRunnerTest {
+
+    // The number of bodies
+    static final int BODY_COUNT = 500;
+
+/**
+ * Tests that fixed steps (body updates from views and world step) allocate nothing once warmed up.
+ */
+@Test
+public void testStepAllocations()
+{
+    // Create runner and warm up
+    PhysicsRunner runner = createRunner();
+    for(int i=0; i<200; i++) runner.stepFrame(40);
+    
+    // Step and check allocated bytes
+    long bytes0 = getAllocatedBytes(Thread.currentThread());
+    for(int i=0; i<100; i++) runner.stepFrame(40);
+    assertEquals(0, getAllocatedBytes(Thread.currentThread()) - bytes0);
+}
+
+/**
+ * Tests that publishing body targets (UI thread) and the simulation thread loop allocate nothing once warmed up.
+ */
+@Test
+public void testThreadedAllocations() throws InterruptedException
+{
+    // Create runner, start simulation thread and warm up
+    PhysicsRunner runner = createRunner();
+    runner.startSimThread(); Thread simThread = runner._simThread;
+    for(int i=0; i<200; i++) runner.publishBodyTargets();
+    Thread.sleep(500);
+    
+    // Publish targets for a while and check allocated bytes on UI (this) thread and simulation thread
+    long bytes0 = getAllocatedBytes(Thread.currentThread()), simBytes0 = getAllocatedBytes(simThread);
+    for(int i=0; i<100; i++) { runner.publishBodyTargets(); Thread.sleep(5); }
+    long bytes1 = getAllocatedBytes(Thread.currentThread()), simBytes1 = getAllocatedBytes(simThread);
+    runner.stopSimThread();
+    assertEquals(0, bytes1 - bytes0);
+    assertEquals(0, simBytes1 - simBytes0);
+}
+
+/**
+ * Creates a runner for a view with bodies in a grid (not touching, so there are no contacts), every fifth one
+ * kinematic (so it is updated from its view every step).
+ */
+static PhysicsRunner createRunner()
+{
+    // Create view with children in grid
+    ChildView view = new ChildView(); view.setSize(2000, 1600);
+    for(int i=0; i<BODY_COUNT; i++)
+        view.addChild(new RectView(50 + i%25*60, 50 + i/25*60, 20, 20));
+    
+    // Create runner and make every fifth body kinematic
+    PhysicsRunner runner = new PhysicsRunner(view);
+    for(int i=0; i<BODY_COUNT; i+=5) view.getChild(i).getPhysics().setDynamic(false);
+    return runner;
+}
+
+/**
+ * Returns the bytes allocated by given thread so far.
+ */
+static long getAllocatedBytes(Thread aThread)
+{
+    com.sun.management.ThreadMXBean mxbean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    return mxbean.getThreadAllocatedBytes(aThread.getId());
+}
+
+}
@@ -0,0 +1,68 @@
+package studio.app;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import snap.util.XMLElement;
+import snap.web.WebURL;
+
+/**
+ * Tests for XMLWriter: Round trip of an existing document and escapes.
+ */
+public class XMLWriterTest {
+
+/**
+ * Tests that an existing document written with XMLWriter reads back the same and matches XMLElement.getBytes().
+ */
+@Test
+public void testRoundTripFixture() throws IOException
+{
+    // Read fixture document
+    WebURL url = WebURL.getURL(studio.apptools.DocViewTool.class, "DocViewTool.snp");
+    XMLElement xml = XMLElement.getElement(url);
+    assertNotNull(xml);
+    byte[] expected = xml.getBytes();
+    
+    // Write with XMLWriter (without release, so tree stays intact) and compare with getBytes()
+    byte[] bytes = write(xml);
+    assertArrayEquals(expected, bytes);
+    
+    // Read written bytes back and compare with original
+    XMLElement xml2 = XMLElement.getElement(bytes);
+    assertArrayEquals(expected, xml2.getBytes());
+    
+    // Check getBytes() with a size hint that is exact and one that is too small
+    assertArrayEquals(expected, XMLWriter.getBytes(xml, bytes.length));
+    assertArrayEquals(expected, XMLWriter.getBytes(xml, 0));
+}
+
+/**
+ * Tests that control characters are written as character references and read back, instead of being dropped.
+ */
+@Test
+public void testControlChars() throws IOException
+{
+    // Write element with control chars in value and attribute
+    XMLElement xml = new XMLElement("Text"); xml.add("name", "a\u0001b"); xml.setValue("c\u001Fd\te");
+    byte[] bytes = write(xml);
+    String str = new String(bytes, StandardCharsets.UTF_8);
+    assertTrue(str.contains("a&#1;b"));
+    assertTrue(str.contains("c&#31;d&#9;e"));
+    
+    // Read back and check values
+    XMLElement xml2 = XMLElement.getElement(bytes);
+    assertEquals("a\u0001b", xml2.getAttributeValue("name"));
+    assertEquals("c\u001Fd\te", xml2.getValue());
+}
+
+/**
+ * Writes given element with XMLWriter and returns bytes.
+ */
+static byte[] write(XMLElement anElement) throws IOException
+{
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (XMLWriter xwriter = new XMLWriter(bout)) { xwriter.write(anElement); }
+    return bout.toByteArray();
+}
+
+}